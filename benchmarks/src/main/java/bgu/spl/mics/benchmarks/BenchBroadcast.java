@@ -0,0 +1,9 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.Broadcast;
+
+/**
+ * A broadcast used by the message-bus benchmarks.
+ */
+class BenchBroadcast implements Broadcast {
+}
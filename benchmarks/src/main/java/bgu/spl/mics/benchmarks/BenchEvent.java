@@ -0,0 +1,18 @@
+package bgu.spl.mics.benchmarks;
+
+import bgu.spl.mics.Event;
+
+/**
+ * An event with an optional payload, used by the message-bus benchmarks.
+ */
+class BenchEvent implements Event<Boolean> {
+    private final double[] payload;
+
+    BenchEvent(double[] payload) {
+        this.payload = payload;
+    }
+
+    double[] getPayload() {
+        return payload;
+    }
+}
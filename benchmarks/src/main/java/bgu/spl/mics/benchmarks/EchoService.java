@@ -0,0 +1,44 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+
+import bgu.spl.mics.MicroService;
+
+/**
+ * A micro-service that runs the real event loop on a thread of its own and completes every
+ * {@link BenchEvent} it receives, so benchmarks measure the whole way from send to the resolved future.
+ */
+class EchoService extends MicroService {
+    private final CountDownLatch subscribed;
+    private Thread thread;
+
+    EchoService(String name) {
+        super(name);
+        subscribed = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void initialize() {
+        subscribeEvent(BenchEvent.class, event -> complete(event, true));
+        subscribeBroadcast(BenchBroadcast.class, broadcast -> { });
+        subscribed.countDown();
+    }
+
+    /**
+     * Starts the event loop and waits until the subscriptions are made.
+     */
+    void open() throws InterruptedException {
+        thread = new Thread(this, getName());
+        thread.setDaemon(true);
+        thread.start();
+        subscribed.await();
+    }
+
+    /**
+     * Stops the event loop - an interrupted event loop terminates and unregisters the service.
+     */
+    void close() throws InterruptedException {
+        thread.interrupt();
+        thread.join();
+    }
+}
@@ -0,0 +1,125 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.TrackedObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of {@link FusionSlam#process()} over {@code landmarks} objects, each observed twice:
+ * the first observation creates its landmark and the second one is fused into it.
+ * Every operation starts from an empty map, so it includes re-queueing the observations.
+ * With {@code parallelism} above 1 the batch is fused on that many threads, partitioned by landmark id.
+ * <p>
+ * {@code processIntoLargeMap} fuses a fixed batch of observations into a map of {@code mapSize} landmarks,
+ * so its score should stay flat as the map grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FusionSlamBenchmark {
+
+    @State(Scope.Thread)
+    public static class Slam {
+        @Param({"10", "100", "1000"})
+        public int landmarks;
+
+        @Param({"8", "64"})
+        public int pointsPerObject;
+
+        @Param({"0", "4"})
+        public int parallelism;
+
+        FusionSlam fusionSlam;
+        List<TrackedObject> observations;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            fusionSlam = FusionSlam.getInstance();
+            fusionSlam.setParallelism(parallelism);
+            fusionSlam.getPoses().clear();
+            fusionSlam.addPoses(new Pose(1, 1.5f, -2.0f, 30.0f));
+            fusionSlam.addPoses(new Pose(2, 2.5f, -1.0f, 45.0f));
+            observations = new ArrayList<>();
+            for (int time = 1; time <= 2; time++) {
+                for (int i = 0; i < landmarks; i++) {
+                    TrackedObject object = new TrackedObject("obj_" + i, time, "object " + i);
+                    for (int p = 0; p < pointsPerObject; p++)
+                        object.addCloudPoint(new CloudPoint(i + p * 0.1, i - p * 0.1));
+                    observations.add(object);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fusionSlam.setParallelism(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LargeMap {
+        static final int BATCH = 100;
+
+        @Param({"1000", "10000", "50000"})
+        public int mapSize;
+
+        FusionSlam fusionSlam;
+        List<TrackedObject> observations;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            fusionSlam = FusionSlam.getInstance();
+            fusionSlam.getPoses().clear();
+            fusionSlam.addPoses(new Pose(1, 1.5f, -2.0f, 30.0f));
+            fusionSlam.getLandmarks().clear();
+            fusionSlam.getAwaitingProcess().clear();
+            for (int i = 0; i < mapSize; i++) {
+                TrackedObject object = new TrackedObject("obj_" + i, 1, "object " + i);
+                object.addCloudPoint(new CloudPoint((double) i, (double) -i));
+                fusionSlam.getLandmarks().add(fusionSlam.createNewLandMark(1, object));
+            }
+            observations = new ArrayList<>();
+            for (int i = 0; i < BATCH; i++) { //spread over the map, so a scan would reach deep into it
+                int id = mapSize - 1 - i * (mapSize / BATCH);
+                TrackedObject object = new TrackedObject("obj_" + id, 1, "object " + id);
+                object.addCloudPoint(new CloudPoint((double) id, (double) -id));
+                observations.add(object);
+            }
+        }
+    }
+
+    @Benchmark
+    public int processIntoLargeMap(LargeMap map) {
+        map.fusionSlam.getAwaitingProcess().addAll(map.observations);
+        map.fusionSlam.process();
+        return map.fusionSlam.getLandmarks().size();
+    }
+
+    @Benchmark
+    public int process(Slam slam) {
+        slam.fusionSlam.getLandmarks().clear();
+        slam.fusionSlam.getAwaitingProcess().addAll(slam.observations);
+        slam.fusionSlam.process();
+        return slam.fusionSlam.getLandmarks().size();
+    }
+}
@@ -0,0 +1,68 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.Future;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link Future}: resolving and reading it on the same thread, through a continuation,
+ * and waiting in {@code get()} for a result resolved by another thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FutureBenchmark {
+
+    @State(Scope.Thread)
+    public static class Resolver {
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = Executors.newSingleThreadExecutor();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public Integer resolveThenGet() {
+        Future<Integer> future = new Future<>();
+        future.resolve(1);
+        return future.get();
+    }
+
+    @Benchmark
+    public Integer resolveThroughContinuation() {
+        Future<Integer> future = new Future<>();
+        Future<Integer> next = future.thenApply(result -> result + 1);
+        future.resolve(1);
+        return next.get();
+    }
+
+    @Benchmark
+    public Integer getResolvedByAnotherThread(Resolver resolver) {
+        Future<Integer> future = new Future<>();
+        resolver.executor.execute(() -> future.resolve(1));
+        return future.get();
+    }
+}
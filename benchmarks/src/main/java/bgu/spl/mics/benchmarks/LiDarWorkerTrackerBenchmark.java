@@ -0,0 +1,85 @@
+package bgu.spl.mics.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of {@link LiDarWorkerTracker#checkData(StampedDetectedObjects)} for a detection of
+ * {@code objectsPerDetection} objects, against a LiDAR database of {@code databaseSize} entries
+ * ({@code objectsPerDetection} objects per tick, {@code pointsPerObject} points each).
+ * The database is a singleton, so every parameter combination runs in a JVM of its own ({@code @Fork}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiDarWorkerTrackerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Tracker {
+        @Param({"100", "10000"})
+        public int databaseSize;
+
+        @Param({"1", "8"})
+        public int objectsPerDetection;
+
+        @Param({"8", "64"})
+        public int pointsPerObject;
+
+        LiDarWorkerTracker tracker;
+        StampedDetectedObjects detection;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            List<StampedCloudPoints> database = new ArrayList<>();
+            for (int i = 0; i < databaseSize; i++) {
+                StampedCloudPoints stamped = new StampedCloudPoints("obj_" + i % objectsPerDetection, 1 + i / objectsPerDetection);
+                for (int p = 0; p < pointsPerObject; p++)
+                    stamped.getCloudPoints().add(Arrays.asList(i + p * 0.1, i - p * 0.1, 0.1));
+                database.add(stamped);
+            }
+            File file = File.createTempFile("lidar_data", ".json");
+            file.deleteOnExit();
+            try (FileWriter writer = new FileWriter(file)) {
+                new Gson().toJson(database, writer);
+            }
+            tracker = new LiDarWorkerTracker(1, 0, file.getAbsolutePath());
+
+            List<DetectedObject> objects = new ArrayList<>();
+            for (int i = 0; i < objectsPerDetection; i++)
+                objects.add(new DetectedObject("obj_" + i, "object " + i));
+            detection = new StampedDetectedObjects(databaseSize / objectsPerDetection / 2, objects); //a tick in the middle
+        }
+    }
+
+    @Benchmark
+    public int checkData(Tracker tracker) {
+        tracker.tracker.getLastTrackedObjects().clear();
+        tracker.tracker.checkData(tracker.detection);
+        return tracker.tracker.getLastTrackedObjects().size();
+    }
+}
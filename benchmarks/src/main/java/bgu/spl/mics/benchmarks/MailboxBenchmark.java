@@ -0,0 +1,139 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.MailboxSettings;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.OverflowPolicy;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the message queues under the load they get in the simulation: several senders and the single
+ * micro-service that owns the queue. {@code BASELINE} is the unbounded {@link LinkedBlockingQueue} the message-bus
+ * registers by default; {@code LINKED} and {@code RING} are the bounded mailboxes, which make senders wait for room
+ * ({@link OverflowPolicy#BLOCK}), so every send is a delivered message. Senders wait with a timeout, so none is left
+ * blocked when an iteration ends. The consumers also count the messages they take out ({@code delivered}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class MailboxBenchmark {
+    private static final Message MESSAGE = new Broadcast() { };
+
+    /**
+     * A queue shared by the senders and the consumer of a group.
+     */
+    @State(Scope.Group)
+    public static class Queue {
+        @Param({"BASELINE", "LINKED", "RING"})
+        public String kind;
+
+        @Param({"1024"})
+        public int capacity;
+
+        BlockingQueue<Message> mailbox;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            mailbox = create(kind, capacity);
+        }
+    }
+
+    /**
+     * A queue of a single thread.
+     */
+    @State(Scope.Thread)
+    public static class OwnQueue {
+        @Param({"BASELINE", "LINKED", "RING"})
+        public String kind;
+
+        @Param({"1024"})
+        public int capacity;
+
+        BlockingQueue<Message> mailbox;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            mailbox = create(kind, capacity);
+        }
+    }
+
+    /**
+     * The messages a consumer took out of its queue.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Delivered {
+        final List<Message> batch = new ArrayList<>();
+        public long delivered;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            delivered = 0;
+        }
+    }
+
+    static BlockingQueue<Message> create(String kind, int capacity) {
+        if (kind.equals("BASELINE"))
+            return new LinkedBlockingQueue<>();
+        return MailboxSettings.newMailbox(MailboxSettings.Kind.valueOf(kind), capacity, OverflowPolicy.BLOCK);
+    }
+
+    private static boolean send(BlockingQueue<Message> mailbox) throws InterruptedException {
+        return mailbox.offer(MESSAGE, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark @Group("oneSender") @GroupThreads(1)
+    public boolean oneSender_send(Queue queue) throws InterruptedException {
+        return send(queue.mailbox);
+    }
+
+    @Benchmark @Group("oneSender") @GroupThreads(1)
+    public Message oneSender_poll(Queue queue, Delivered delivered) {
+        Message message = queue.mailbox.poll();
+        if (message != null)
+            delivered.delivered++;
+        return message;
+    }
+
+    @Benchmark @Group("fourSenders") @GroupThreads(4)
+    public boolean fourSenders_send(Queue queue) throws InterruptedException {
+        return send(queue.mailbox);
+    }
+
+    @Benchmark @Group("fourSenders") @GroupThreads(1)
+    public void fourSenders_drain(Queue queue, Delivered delivered) {
+        delivered.batch.clear();
+        delivered.delivered += queue.mailbox.drainTo(delivered.batch, 64);
+    }
+
+    /**
+     * A single thread adding a message and taking it back - the cost of one hand-off without contention.
+     */
+    @Benchmark
+    public Message uncontendedRoundTrip(OwnQueue queue) {
+        queue.mailbox.offer(MESSAGE);
+        return queue.mailbox.poll();
+    }
+}
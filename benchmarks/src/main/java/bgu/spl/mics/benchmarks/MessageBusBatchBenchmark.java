@@ -0,0 +1,153 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.Future;
+import bgu.spl.mics.MessageBusImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares sending a batch of messages one by one ({@code sendEvent} / {@code sendBroadcast})
+ * with sending it through {@code sendEvents} / {@code sendBroadcasts}, at 1, 8 and 64 producer threads.
+ * Every operation sends {@code batchSize} messages, so the scores of both ways are directly comparable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBusBatchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Bus {
+        @Param({"4"})
+        public int consumers;
+
+        @Param({"16"})
+        public int batchSize;
+
+        MessageBusImpl messageBus;
+        List<SinkService> sinks;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            messageBus = MessageBusImpl.getInstance();
+            sinks = new ArrayList<>();
+            for (int i = 0; i < consumers; i++) {
+                SinkService sink = new SinkService("sink" + i);
+                sink.open();
+                messageBus.subscribeEvent(BenchEvent.class, sink);
+                messageBus.subscribeBroadcast(BenchBroadcast.class, sink);
+                sinks.add(sink);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            for (SinkService sink : sinks)
+                sink.close();
+        }
+    }
+
+    @Benchmark @Threads(1)
+    public void eventsOneByOne_1(Bus bus, Blackhole bh) {
+        eventsOneByOne(bus, bh);
+    }
+
+    @Benchmark @Threads(8)
+    public void eventsOneByOne_8(Bus bus, Blackhole bh) {
+        eventsOneByOne(bus, bh);
+    }
+
+    @Benchmark @Threads(64)
+    public void eventsOneByOne_64(Bus bus, Blackhole bh) {
+        eventsOneByOne(bus, bh);
+    }
+
+    @Benchmark @Threads(1)
+    public void eventsBatched_1(Bus bus, Blackhole bh) {
+        eventsBatched(bus, bh);
+    }
+
+    @Benchmark @Threads(8)
+    public void eventsBatched_8(Bus bus, Blackhole bh) {
+        eventsBatched(bus, bh);
+    }
+
+    @Benchmark @Threads(64)
+    public void eventsBatched_64(Bus bus, Blackhole bh) {
+        eventsBatched(bus, bh);
+    }
+
+    @Benchmark @Threads(1)
+    public void broadcastsOneByOne_1(Bus bus) {
+        broadcastsOneByOne(bus);
+    }
+
+    @Benchmark @Threads(8)
+    public void broadcastsOneByOne_8(Bus bus) {
+        broadcastsOneByOne(bus);
+    }
+
+    @Benchmark @Threads(64)
+    public void broadcastsOneByOne_64(Bus bus) {
+        broadcastsOneByOne(bus);
+    }
+
+    @Benchmark @Threads(1)
+    public void broadcastsBatched_1(Bus bus) {
+        broadcastsBatched(bus);
+    }
+
+    @Benchmark @Threads(8)
+    public void broadcastsBatched_8(Bus bus) {
+        broadcastsBatched(bus);
+    }
+
+    @Benchmark @Threads(64)
+    public void broadcastsBatched_64(Bus bus) {
+        broadcastsBatched(bus);
+    }
+
+    private static void eventsOneByOne(Bus bus, Blackhole bh) {
+        for (int i = 0; i < bus.batchSize; i++) {
+            Future<Boolean> future = bus.messageBus.sendEvent(new BenchEvent(null));
+            bh.consume(future);
+        }
+    }
+
+    private static void eventsBatched(Bus bus, Blackhole bh) {
+        List<BenchEvent> events = new ArrayList<>(bus.batchSize);
+        for (int i = 0; i < bus.batchSize; i++)
+            events.add(new BenchEvent(null));
+        bh.consume(bus.messageBus.sendEvents(events));
+    }
+
+    private static void broadcastsOneByOne(Bus bus) {
+        for (int i = 0; i < bus.batchSize; i++)
+            bus.messageBus.sendBroadcast(new BenchBroadcast());
+    }
+
+    private static void broadcastsBatched(Bus bus) {
+        List<BenchBroadcast> broadcasts = new ArrayList<>(bus.batchSize);
+        for (int i = 0; i < bus.batchSize; i++)
+            broadcasts.add(new BenchBroadcast());
+        bus.messageBus.sendBroadcasts(broadcasts);
+    }
+}
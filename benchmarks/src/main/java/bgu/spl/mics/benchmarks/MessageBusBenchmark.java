@@ -0,0 +1,74 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.MessageBusImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Baseline throughput of {@link MessageBusImpl}: an event sent to one of {@code subscribers} running services
+ * and awaited until its future is resolved, and a broadcast sent to all of them.
+ * The number of producer threads is chosen on the command line with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBusBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Bus {
+        @Param({"1", "4", "16"})
+        public int subscribers;
+
+        @Param({"0", "64", "1024"})
+        public int payloadSize;
+
+        MessageBusImpl messageBus;
+        List<EchoService> services;
+        double[] payload;
+
+        @Setup(Level.Trial)
+        public void setup() throws InterruptedException {
+            messageBus = MessageBusImpl.getInstance();
+            payload = payloadSize == 0 ? null : new double[payloadSize];
+            services = new ArrayList<>();
+            for (int i = 0; i < subscribers; i++) {
+                EchoService service = new EchoService("echo" + i);
+                service.open();
+                services.add(service);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            for (EchoService service : services)
+                service.close();
+        }
+    }
+
+    @Benchmark
+    public Boolean sendEventAndAwait(Bus bus) {
+        return bus.messageBus.sendEvent(new BenchEvent(bus.payload)).get();
+    }
+
+    @Benchmark
+    public void sendBroadcast(Bus bus) {
+        bus.messageBus.sendBroadcast(new BenchBroadcast());
+    }
+}
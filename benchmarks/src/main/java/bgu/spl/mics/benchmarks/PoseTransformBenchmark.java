@@ -0,0 +1,108 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.PointCloud;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.PoseStore;
+import bgu.spl.mics.application.objects.PoseTransform;
+import bgu.spl.mics.application.objects.TrackedObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Transforming the clouds of a TrackedObjectsEvent ({@code objects} objects of {@code points} points, all at the
+ * same pose) to global coordinates:
+ * {@code boxedPerPoint} is the original per-point code with boxed doubles and a list of CloudPoints,
+ * {@code primitivePerObject} computes the sine and cosine for every object, and {@code batch} is
+ * {@link PoseTransform#applyAll(List, PoseStore)}, with the sine and cosine cached in the pose.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoseTransformBenchmark {
+
+    @State(Scope.Thread)
+    public static class Frame {
+        @Param({"64", "1024", "8192"})
+        public int points;
+
+        @Param({"1", "16"})
+        public int objects;
+
+        Pose pose;
+        PoseStore poses;
+        List<TrackedObject> trackedObjects;
+        List<List<CloudPoint>> boxedClouds;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pose = new Pose(1, 1.5f, -2.0f, 30.0f);
+            poses = new PoseStore();
+            poses.add(pose);
+            trackedObjects = new ArrayList<>();
+            boxedClouds = new ArrayList<>();
+            for (int o = 0; o < objects; o++) {
+                TrackedObject trackedObject = new TrackedObject("obj_" + o, 1, "object " + o);
+                for (int p = 0; p < points; p++)
+                    trackedObject.addCloudPoint(o + p * 0.01, o - p * 0.01);
+                trackedObjects.add(trackedObject);
+                boxedClouds.add(new ArrayList<>(trackedObject.getCoordinates()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void boxedPerPoint(Frame frame, Blackhole bh) {
+        for (List<CloudPoint> cloud : frame.boxedClouds)
+            bh.consume(boxedTransform(frame.pose, cloud));
+    }
+
+    @Benchmark
+    public void primitivePerObject(Frame frame, Blackhole bh) {
+        for (TrackedObject trackedObject : frame.trackedObjects)
+            bh.consume(new PoseTransform(frame.pose).apply(trackedObject.getCoordinates()));
+    }
+
+    @Benchmark
+    public List<PointCloud> batch(Frame frame) {
+        return PoseTransform.applyAll(frame.trackedObjects, frame.poses);
+    }
+
+    /**
+     * The transform of FusionSlam.createNewLandMark before the coordinates were kept in primitive arrays.
+     */
+    private static List<CloudPoint> boxedTransform(Pose pose, List<CloudPoint> local) {
+        Double xRobot = (double) pose.getX();
+        Double yRobot = (double) pose.getY();
+        Double yawRobot = (double) pose.getYaw();
+        yawRobot = Math.toRadians(yawRobot);
+        Double cosYaw = Math.cos(yawRobot);
+        Double sinYaw = Math.sin(yawRobot);
+        List<CloudPoint> newCoordinates = new ArrayList<>();
+        for (CloudPoint localCloudPoint : local) {
+            Double xLocal = localCloudPoint.getX();
+            Double yLocal = localCloudPoint.getY();
+            Double xGlobal = (cosYaw * xLocal) - (sinYaw * yLocal) + xRobot;
+            Double yGlobal = (sinYaw * xLocal) + (cosYaw * yLocal) + yRobot;
+            newCoordinates.add(new CloudPoint(xGlobal, yGlobal));
+        }
+        return newCoordinates;
+    }
+}
@@ -0,0 +1,56 @@
+package bgu.spl.mics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MicroService;
+
+/**
+ * A micro-service that is never run. It is registered at the message-bus and its queue is
+ * emptied by a background drainer thread, so benchmarks measure only the sending side.
+ */
+class SinkService extends MicroService {
+    private Thread drainer;
+
+    SinkService(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void initialize() {
+    }
+
+    /**
+     * Registers this service and starts draining its queue.
+     */
+    void open() {
+        MessageBusImpl.getInstance().register(this);
+        BlockingQueue<Message> queue = MessageBusImpl.getInstance().getServiceMap().get(this);
+        drainer = new Thread(() -> {
+            List<Message> buffer = new ArrayList<>();
+            try {
+                while (true) {
+                    buffer.add(queue.take());
+                    queue.drainTo(buffer);
+                    buffer.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, getName() + "-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stops draining and unregisters this service.
+     */
+    void close() throws InterruptedException {
+        drainer.interrupt();
+        drainer.join();
+        MessageBusImpl.getInstance().unregister(this);
+    }
+}
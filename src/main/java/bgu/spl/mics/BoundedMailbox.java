@@ -0,0 +1,487 @@
+package bgu.spl.mics;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A message queue with a fixed capacity. {@link #deliver(Message)} - the method the message-bus uses to deliver
+ * messages - applies the {@link OverflowPolicy} of the queue when it is full instead of failing.
+ * The queue also records its high-water mark (the largest depth it has reached) and the number of dropped messages.
+ * <p>
+ * A linked queue with a lock for senders and a lock for the consumer, as {@link java.util.concurrent.LinkedBlockingQueue},
+ * so a sender and the consumer never wait for each other; unlike it, {@link #addBatch(Message[], int, int)} queues a
+ * whole batch under a single acquisition of the senders' lock.
+ */
+class BoundedMailbox extends AbstractQueue<Message> implements BlockingQueue<Message>, Mailbox {
+    // How long a blocked sender waits before checking again whether the queue was closed
+    private static final long BLOCK_CHECK_MILLIS = 100;
+
+    private static class Node {
+        Message item;
+        Node next;
+
+        Node(Message item) {
+            this.item = item;
+        }
+    }
+
+    private final int capacity;
+    private final AtomicInteger count;
+    private Node head; // its item is always null, the first message is in head.next
+    private Node last;
+    private final ReentrantLock takeLock;
+    private final Condition notEmpty;
+    private final ReentrantLock putLock;
+    private final Condition notFull;
+    private final OverflowPolicy policy;
+    private final Set<Class<? extends Broadcast>> coalesced;
+    private final AtomicInteger highWaterMark;
+    private final AtomicLong dropped;
+    private volatile boolean closed;
+    private volatile Consumer<Message> dropListener;
+
+    BoundedMailbox(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, Collections.emptySet());
+    }
+
+    /**
+     * @param coalesced The broadcast types a new broadcast may replace a queued one of, under
+     *                  {@link OverflowPolicy#COALESCE}.
+     */
+    BoundedMailbox(int capacity, OverflowPolicy policy, Set<Class<? extends Broadcast>> coalesced) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.capacity = capacity;
+        count = new AtomicInteger(0);
+        head = last = new Node(null);
+        takeLock = new ReentrantLock();
+        notEmpty = takeLock.newCondition();
+        putLock = new ReentrantLock();
+        notFull = putLock.newCondition();
+        this.policy = policy;
+        this.coalesced = coalesced;
+        highWaterMark = new AtomicInteger(0);
+        dropped = new AtomicLong(0);
+        closed = false;
+        dropListener = message -> { };
+    }
+
+    @Override
+    public boolean deliver(Message message) {
+        boolean added;
+        switch (policy) {
+            case DROP_NEWEST:
+                added = offer(message);
+                break;
+            case DROP_OLDEST:
+                while (!(added = offer(message)) && !closed) {
+                    Message oldest = poll();
+                    if (oldest != null)
+                        drop(oldest);
+                }
+                break;
+            case COALESCE:
+                added = offer(message) || (coalesced.contains(Envelope.unwrap(message).getClass()) && replaceOldest(message)) || await(message);
+                break;
+            default:
+                added = offer(message) || await(message);
+        }
+        if (added)
+            highWaterMark.accumulateAndGet(size(), Math::max);
+        else
+            drop(message);
+        return added;
+    }
+
+    /**
+     * Queues as many of the messages as there is room for under a single acquisition of the senders' lock, and
+     * delivers the rest one by one.
+     */
+    @Override
+    public int addBatch(Message[] messages, int from, int to) {
+        int queued = 0;
+        int before = -1;
+        putLock.lock();
+        try {
+            if (!closed) {
+                queued = Math.min(to - from, capacity - count.get());
+                for (int i = from; i < from + queued; i++)
+                    enqueue(new Node(messages[i]));
+                if (queued > 0) {
+                    before = count.getAndAdd(queued);
+                    if (before + queued < capacity)
+                        notFull.signal();
+                }
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0)
+            signalNotEmpty();
+        if (queued > 0)
+            highWaterMark.accumulateAndGet(size(), Math::max);
+        int added = queued;
+        for (int i = from + queued; i < to; i++) {
+            if (deliver(messages[i]))
+                added++;
+            else
+                messages[i] = null;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean offer(Message message) {
+        if (message == null)
+            throw new NullPointerException();
+        if (count.get() == capacity || closed)
+            return false;
+        int before = -1;
+        putLock.lock();
+        try {
+            if (count.get() < capacity && !closed) {
+                enqueue(new Node(message));
+                before = count.getAndIncrement();
+                if (before + 1 < capacity)
+                    notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0)
+            signalNotEmpty();
+        return before >= 0;
+    }
+
+    @Override
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        if (message == null)
+            throw new NullPointerException();
+        long nanos = unit.toNanos(timeout);
+        int before;
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == capacity) {
+                if (nanos <= 0 || closed)
+                    return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (closed)
+                return false;
+            enqueue(new Node(message));
+            before = count.getAndIncrement();
+            if (before + 1 < capacity)
+                notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+        if (before == 0)
+            signalNotEmpty();
+        return true;
+    }
+
+    @Override
+    public void put(Message message) throws InterruptedException {
+        if (!offer(message, Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+            throw new IllegalStateException("Mailbox is closed");
+    }
+
+    @Override
+    public Message poll() {
+        if (count.get() == 0)
+            return null;
+        Message message = null;
+        int before = -1;
+        takeLock.lock();
+        try {
+            if (count.get() > 0) {
+                message = dequeue();
+                before = count.getAndDecrement();
+                if (before > 1)
+                    notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity)
+            signalNotFull();
+        return message;
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        Message message;
+        int before;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0)
+                notEmpty.await();
+            message = dequeue();
+            before = count.getAndDecrement();
+            if (before > 1)
+                notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity)
+            signalNotFull();
+        return message;
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        Message message;
+        int before;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            message = dequeue();
+            before = count.getAndDecrement();
+            if (before > 1)
+                notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        if (before == capacity)
+            signalNotFull();
+        return message;
+    }
+
+    @Override
+    public Message peek() {
+        if (count.get() == 0)
+            return null;
+        takeLock.lock();
+        try {
+            return head.next == null ? null : head.next.item;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Message> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Message> c, int maxElements) {
+        if (maxElements <= 0)
+            return 0;
+        int drained = 0;
+        boolean signalNotFull = false;
+        takeLock.lock();
+        try {
+            int n = Math.min(maxElements, count.get());
+            while (drained < n) {
+                c.add(dequeue());
+                drained++;
+            }
+            if (drained > 0)
+                signalNotFull = count.getAndAdd(-drained) == capacity;
+        } finally {
+            takeLock.unlock();
+        }
+        if (signalNotFull)
+            signalNotFull();
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    /**
+     * @return an iterator over the waiting messages; each step takes both locks, so it is meant for rare scans.
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private Node current;
+            private Message currentItem;
+            private Node lastReturned;
+
+            {
+                advance(null);
+            }
+
+            /**
+             * Moves to the first waiting message after {@code from}, or to the first one if {@code from} is null.
+             */
+            private void advance(Node from) {
+                fullyLock();
+                try {
+                    Node next = from == null ? head.next : from.next;
+                    while (next != null && next.item == null) { // taken or removed meanwhile
+                        Node after = next.next;
+                        next = after == next ? head.next : after; // a taken node links to itself
+                    }
+                    current = next;
+                    currentItem = next == null ? null : next.item;
+                } finally {
+                    fullyUnlock();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public Message next() {
+                if (current == null)
+                    throw new NoSuchElementException();
+                lastReturned = current;
+                Message message = currentItem;
+                advance(current);
+                return message;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null)
+                    throw new IllegalStateException();
+                fullyLock();
+                try {
+                    for (Node previous = head, node = head.next; node != null; previous = node, node = node.next) {
+                        if (node == lastReturned) {
+                            unlink(node, previous);
+                            break;
+                        }
+                    }
+                } finally {
+                    fullyUnlock();
+                }
+                lastReturned = null;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        signalNotFull();
+    }
+
+    @Override
+    public void setDropListener(Consumer<Message> listener) {
+        dropListener = listener;
+    }
+
+    @Override
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    private void drop(Message message) {
+        dropped.incrementAndGet();
+        dropListener.accept(message);
+    }
+
+    private void enqueue(Node node) {
+        last = last.next = node;
+    }
+
+    private Message dequeue() {
+        Node first = head.next;
+        head.next = head; // helps the garbage collector
+        head = first;
+        Message message = first.item;
+        first.item = null;
+        return message;
+    }
+
+    private void unlink(Node node, Node previous) {
+        node.item = null;
+        previous.next = node.next;
+        if (last == node)
+            last = previous;
+        if (count.getAndDecrement() == capacity)
+            notFull.signal();
+    }
+
+    private void signalNotEmpty() {
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    private void signalNotFull() {
+        putLock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    private void fullyLock() {
+        putLock.lock();
+        takeLock.lock();
+    }
+
+    private void fullyUnlock() {
+        takeLock.unlock();
+        putLock.unlock();
+    }
+
+    private boolean await(Message message) {
+        try {
+            while (!closed) {
+                if (offer(message, BLOCK_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private boolean replaceOldest(Message message) {
+        Iterator<Message> iterator = iterator();
+        while (iterator.hasNext()) {
+            Message queued = iterator.next();
+            if (Envelope.unwrap(queued).getClass() == Envelope.unwrap(message).getClass()) {
+                iterator.remove();
+                drop(queued);
+                return offer(message) || await(message);
+            }
+        }
+        return false;
+    }
+}
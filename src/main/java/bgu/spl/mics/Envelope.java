@@ -0,0 +1,61 @@
+package bgu.spl.mics;
+
+/**
+ * Carries an {@link Event} through the message queue of the micro-service that handles it, together with the
+ * {@link Future} returned to its sender. The micro-service resolves the future straight from the envelope, so the
+ * message-bus does not have to keep a table from events to futures, and both are garbage as soon as the event
+ * is handled.
+ */
+final class Envelope<T> implements Message {
+    private final Event<T> event;
+    private final Future<T> future;
+    private final long sentNanos; // 0 unless metrics are enabled
+    private boolean completed; // accessed only by the micro-service handling the event
+
+    Envelope(Event<T> event, Future<T> future, long sentNanos) {
+        this.event = event;
+        this.future = future;
+        this.sentNanos = sentNanos;
+        completed = false;
+    }
+
+    Event<T> getEvent() {
+        return event;
+    }
+
+    Future<T> getFuture() {
+        return future;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    void complete(T result) {
+        completed = true;
+        future.resolve(result);
+    }
+
+    /**
+     * @return the event or broadcast carried by {@code message} if it is an envelope or a {@link StampedBroadcast},
+     *         {@code message} itself otherwise.
+     */
+    static Message unwrap(Message message) {
+        if (message instanceof Envelope)
+            return ((Envelope<?>) message).event;
+        if (message instanceof StampedBroadcast)
+            return ((StampedBroadcast) message).getBroadcast();
+        return message;
+    }
+
+    /**
+     * @return the time {@code message} was sent (by {@link System#nanoTime()}), or 0 if it was not stamped.
+     */
+    static long sentNanos(Message message) {
+        if (message instanceof Envelope)
+            return ((Envelope<?>) message).sentNanos;
+        if (message instanceof StampedBroadcast)
+            return ((StampedBroadcast) message).getSentNanos();
+        return 0;
+    }
+}
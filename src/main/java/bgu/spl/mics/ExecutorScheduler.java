@@ -0,0 +1,107 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs micro-services on a fixed pool of worker threads.
+ * Instead of blocking in {@link MessageBus#awaitMessage(MicroService)}, a micro-service is submitted to the pool
+ * whenever a message arrives to its empty queue, handles the messages it finds and then releases the worker.
+ * Micro-services must therefore not block in their callbacks or in {@link MicroService#initialize()}.
+ * A micro-service whose initialization or callback throws is terminated, as its thread would end under
+ * {@link ThreadScheduler}, so it never keeps {@link #awaitTermination()} waiting.
+ */
+class ExecutorScheduler implements MicroServiceScheduler {
+    // Maximal number of messages a micro-service handles before giving the worker to another micro-service
+    private static final int MAX_MESSAGES_PER_RUN = 64;
+
+    private final ExecutorService workers;
+    private final MessageBusImpl messageBus;
+    private int running; // started micro-services that have not terminated yet, guarded by this
+
+    ExecutorScheduler(int threads) {
+        AtomicInteger workerCounter = new AtomicInteger(0);
+        workers = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "MicroServiceWorker-" + workerCounter.incrementAndGet()));
+        messageBus = MessageBusImpl.getInstance();
+        running = 0;
+    }
+
+    @Override
+    public void start(MicroService m) {
+        synchronized (this) {
+            running++;
+        }
+        Activation activation = new Activation(m);
+        m.setMessageListener(activation::schedule);
+        workers.execute(activation);
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        synchronized (this) {
+            while (running > 0) {
+                this.wait();
+            }
+        }
+        workers.shutdown();
+    }
+
+    private synchronized void terminated() {
+        running--;
+        if (running == 0)
+            this.notifyAll();
+    }
+
+    /**
+     * A single run of a micro-service on a worker: the first run initializes it, every run handles the
+     * messages waiting in its queue. At most one activation of a micro-service is submitted at a time.
+     */
+    private final class Activation implements Runnable {
+        private final MicroService service;
+        private final AtomicBoolean scheduled;
+        private final List<Message> batch;
+        private boolean initialized;
+
+        Activation(MicroService service) {
+            this.service = service;
+            scheduled = new AtomicBoolean(true); // the first run is submitted by start()
+            batch = new ArrayList<>();
+            initialized = false;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true))
+                workers.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!initialized) {
+                    initialized = true;
+                    service.bootstrap();
+                }
+                if (!service.isTerminated())
+                    service.handleAvailable(batch, MAX_MESSAGES_PER_RUN);
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace();
+                if (!service.isTerminated())
+                    service.terminate();
+            }
+            if (service.isTerminated()) {
+                service.setMessageListener(null);
+                terminated();
+                return;
+            }
+            scheduled.set(false);
+            // a message that arrived after the queue was emptied, but before scheduled was cleared, did not schedule us
+            if (messageBus.hasMessages(service))
+                schedule();
+        }
+    }
+}
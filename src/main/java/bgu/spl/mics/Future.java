@@ -1,32 +1,58 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A Future object represents a promised result - an object that will
  * eventually be resolved to hold a result of some operation. The class allows
- * Retrieving the result once it is available.
- * Only private methods may be added to this class.
+ * Retrieving the result once it is available, either by waiting for it or by
+ * registering a continuation that runs when it is resolved.
+ * A Future may also fail instead (see {@link #fail(Throwable)}) - a dependent Future then fails with it.
  * No public constructor is allowed except for the empty constructor.
  */
 public class Future<T> {
-	private T result;
+	private static final Object PENDING = new Object();
+	private static final Object NULL_RESULT = new Object(); //a future resolved with null is still done
+
+	private final AtomicReference<Object> outcome; //PENDING until resolved, set only once
+	private List<Runnable> continuations; //guarded by this, created by the first continuation registered while pending
+
+	/**
+	 * The outcome of a Future that failed.
+	 */
+	private static final class Failure {
+		final Throwable cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
 	/**
 	 * This should be the only public constructor in this class.
 	 */
 	public Future() {
-		result = null;
+		outcome = new AtomicReference<>(PENDING);
 	}
-	
+
 	/**
      * retrieves the result the Future object holds if it has been resolved.
      * This is a blocking method! It waits for the computation in case it has
      * not been completed.
      * <p>
      * @return return the result of type T if it is available, if not wait until it is available.
-     * 	       
+     * @throws CompletionException if the Future failed, with the cause of the failure.
      */
 	public T get() {
+		if (isDone())
+			return result();
 		synchronized (this) {
 			while (!isDone()) {
 				try {
@@ -36,27 +62,57 @@ public class Future<T> {
 					return null;
 				}
 			}
-			return result;
+			return result();
 		}
     }
-	
+
 	/**
      * Resolves the result of this Future object.
+     * Only the first call has an effect - a resolved future never changes its result.
+     * The continuations registered so far run on the calling thread.
      */
-	public void resolve (T result) {  //no need to synchronize because there is only 1 result and no thread can make result null
-		this.result = result;
-		notifyAll();
+	public void resolve (T result) {
+		complete(result == null ? NULL_RESULT : result);
 	}
-	
+
+	/**
+	 * Makes this Future fail with {@code cause} instead of being resolved with a result: {@link #get()} throws it
+	 * (wrapped), and dependent Futures fail with it too. Only the first call to this method or to
+	 * {@link #resolve(Object)} has an effect.
+	 */
+	void fail(Throwable cause) {
+		complete(new Failure(cause));
+	}
+
+	/**
+	 * @return true if this Future failed, false if it is pending or was resolved with a result.
+	 */
+	boolean isFailed() {
+		return outcome.get() instanceof Failure;
+	}
+
+	private void complete(Object completed) {
+		if (!outcome.compareAndSet(PENDING, completed))
+			return;
+		List<Runnable> toRun;
+		synchronized (this) {
+			toRun = continuations;
+			continuations = null;
+			notifyAll();
+		}
+		if (toRun != null) {
+			for (Runnable continuation : toRun)
+				run(continuation);
+		}
+	}
+
 	/**
      * @return true if this object has been resolved, false otherwise
      */
-	public boolean isDone() {   //if not synchronized then isDone may return false when true(but it's ok?)
-		if (result != null)
-			return true;
-		return false;
+	public boolean isDone() {
+		return outcome.get() != PENDING;
 	}
-	
+
 	/**
      * retrieves the result the Future object holds if it has been resolved,
      * This method is non-blocking, it has a limited amount of time determined
@@ -64,11 +120,14 @@ public class Future<T> {
      * <p>
      * @param timeout 	the maximal amount of time units to wait for the result.
      * @param unit		the {@link TimeUnit} time units to wait.
-     * @return return the result of type T if it is available, if not, 
+     * @return return the result of type T if it is available, if not,
      * 	       wait for {@code timeout} TimeUnits {@code unit}. If time has
      *         elapsed, return null.
+     * @throws CompletionException if the Future failed, with the cause of the failure.
      */
 	public T get(long timeout, TimeUnit unit) {
+		if (isDone())
+			return result();
 		long startTime = System.currentTimeMillis();   //time measured at start
 		long millisTimeOut = unit.toMillis(timeout);   //convert timeout to millis
 		long remainingTime = millisTimeOut;
@@ -82,10 +141,102 @@ public class Future<T> {
 				}
 				remainingTime = millisTimeOut - (System.currentTimeMillis() - startTime);  //calculates timout-(time duration from beginning)
 			}
-			if (remainingTime <= 0)
-				return null;
-			return result;
+			return result();
 		}
 	}
-}
 
+	/**
+	 * Returns a new Future that is resolved with the result of {@code fn} applied to the result of this one.
+	 * This method is non-blocking: {@code fn} runs on the thread that resolves this Future, or right away on the
+	 * calling thread if this Future is already resolved.
+	 * If this Future fails, or {@code fn} throws, the dependent Future fails with the same cause.
+	 * <p>
+	 * @param fn	the function to apply to the result. It should be short, as it runs on the resolving thread.
+	 * @return the dependent Future.
+	 */
+	public <U> Future<U> thenApply(Function<? super T, ? extends U> fn) {
+		Future<U> dependent = new Future<>();
+		whenDone(() -> {
+			Object current = outcome.get();
+			if (current instanceof Failure) {
+				dependent.fail(((Failure) current).cause);
+				return;
+			}
+			U mapped;
+			try {
+				mapped = fn.apply(result());
+			} catch (Throwable e) {
+				dependent.fail(e);
+				return;
+			}
+			dependent.resolve(mapped);
+		});
+		return dependent;
+	}
+
+	/**
+	 * Returns a new Future that is resolved (with null) after {@code action} consumed the result of this one.
+	 * Like {@link #thenApply(Function)}, this method is non-blocking.
+	 * <p>
+	 * @param action	the action to run with the result. It should be short, as it runs on the resolving thread.
+	 * @return the dependent Future.
+	 */
+	public Future<Void> thenAccept(Consumer<? super T> action) {
+		return thenApply(result -> {
+			action.accept(result);
+			return null;
+		});
+	}
+
+	/**
+	 * @return a {@link CompletableFuture} that is completed with the result of this Future once it is resolved,
+	 *         or completed exceptionally if it fails.
+	 *         Completing the returned CompletableFuture does not affect this Future.
+	 */
+	public CompletableFuture<T> toCompletableFuture() {
+		CompletableFuture<T> completable = new CompletableFuture<>();
+		whenDone(() -> {
+			Object current = outcome.get();
+			if (current instanceof Failure)
+				completable.completeExceptionally(((Failure) current).cause);
+			else
+				completable.complete(result());
+		});
+		return completable;
+	}
+
+	/**
+	 * Runs {@code continuation} once this Future is resolved - immediately if it already is.
+	 */
+	private void whenDone(Runnable continuation) {
+		synchronized (this) {
+			if (!isDone()) { //complete did not take the list yet, so it will run the continuation
+				if (continuations == null)
+					continuations = new ArrayList<>(2);
+				continuations.add(continuation);
+				return;
+			}
+		}
+		run(continuation);
+	}
+
+	private void run(Runnable continuation) {
+		try {
+			continuation.run();
+		} catch (RuntimeException e) { //must not stop the other continuations or the resolving micro-service
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the result, or null while pending.
+	 * @throws CompletionException if the Future failed.
+	 */
+	@SuppressWarnings("unchecked")
+	private T result() {
+		Object current = outcome.get();
+		if (current instanceof Failure)
+			throw new CompletionException(((Failure) current).cause);
+		return current == NULL_RESULT || current == PENDING ? null : (T) current;
+	}
+}
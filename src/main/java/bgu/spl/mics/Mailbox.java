@@ -0,0 +1,47 @@
+package bgu.spl.mics;
+
+import java.util.function.Consumer;
+
+/**
+ * The statistics and life-cycle of a message queue allocated by {@link MailboxSettings}.
+ * The message-bus delivers messages with {@link #deliver(Message)}, which applies the {@link OverflowPolicy} of the
+ * queue and returns false when the message was dropped; {@code add} keeps the {@link java.util.Queue} contract.
+ */
+interface Mailbox {
+
+    /**
+     * Adds {@code message} to the queue, applying the overflow policy if the queue is full.
+     * @return true if the message was added, false if it was dropped.
+     */
+    boolean deliver(Message message);
+
+    /**
+     * @return the largest number of messages that were waiting in the queue at once.
+     */
+    int getHighWaterMark();
+
+    /**
+     * @return the number of messages dropped because the queue was full or closed.
+     */
+    long getDroppedCount();
+
+    /**
+     * Makes the queue hand every message it drops - a new one, or a queued one it made room with - to
+     * {@code listener}, on the thread that dropped it.
+     */
+    void setDropListener(Consumer<Message> listener);
+
+    /**
+     * Adds {@code messages[from]} to {@code messages[to - 1]}, in order, as {@link #deliver(Message)} would, but taking the
+     * queue's locks (or claiming its slots) once for the whole batch where there is room for it.
+     * Messages that were dropped are replaced by null in {@code messages}.
+     * @return the number of messages added.
+     */
+    int addBatch(Message[] messages, int from, int to);
+
+    /**
+     * Wakes up the senders waiting for room, and makes all future deliveries drop their message.
+     * Called when the owner of the queue unregisters, so nobody waits for a consumer that is gone.
+     */
+    void close();
+}
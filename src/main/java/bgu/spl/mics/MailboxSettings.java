@@ -0,0 +1,130 @@
+package bgu.spl.mics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Describes the message queues the message-bus allocates in {@link MessageBus#register(MicroService)}:
+ * the kind of queue, a default capacity, capacities for specific micro-services (by name) and the
+ * {@link OverflowPolicy} of full queues, with the broadcast types that {@link OverflowPolicy#COALESCE} coalesces.
+ * A capacity of 0 or less means an unbounded queue - a plain {@link LinkedBlockingQueue}, which never overflows -
+ * or {@link #DEFAULT_RING_CAPACITY} for ring queues, which are always bounded.
+ */
+public class MailboxSettings {
+    /**
+     * The capacity of ring queues of micro-services that have no capacity.
+     */
+    public static final int DEFAULT_RING_CAPACITY = 1024;
+
+    /**
+     * Unbounded queues for every micro-service.
+     */
+    public static final MailboxSettings UNBOUNDED = new MailboxSettings(0, OverflowPolicy.BLOCK, null);
+
+    /**
+     * The kinds of message queues.
+     */
+    public enum Kind {
+        /**
+         * A linked queue, which allocates a node per message. Supports every overflow policy.
+         */
+        LINKED,
+        /**
+         * An array used as a ring, which allocates nothing per message and takes no locks.
+         * Supports the BLOCK and DROP_NEWEST policies.
+         */
+        RING
+    }
+
+    private final Kind kind;
+    private final int defaultCapacity;
+    private final OverflowPolicy policy;
+    private final Map<String, Integer> capacities;
+    private final Set<Class<? extends Broadcast>> coalesced;
+
+    /**
+     * Settings for linked queues.
+     * @param defaultCapacity The capacity of the queue of every micro-service not in {@code capacities}.
+     * @param policy          What full queues do with new messages.
+     * @param capacities      Capacities of specific micro-services by name, may be null.
+     */
+    public MailboxSettings(int defaultCapacity, OverflowPolicy policy, Map<String, Integer> capacities) {
+        this(Kind.LINKED, defaultCapacity, policy, capacities);
+    }
+
+    /**
+     * @param kind            The kind of the queues.
+     * @param defaultCapacity The capacity of the queue of every micro-service not in {@code capacities}.
+     * @param policy          What full queues do with new messages.
+     * @param capacities      Capacities of specific micro-services by name, may be null.
+     */
+    public MailboxSettings(Kind kind, int defaultCapacity, OverflowPolicy policy, Map<String, Integer> capacities) {
+        this(kind, defaultCapacity, policy, capacities, null);
+    }
+
+    /**
+     * @param kind            The kind of the queues.
+     * @param defaultCapacity The capacity of the queue of every micro-service not in {@code capacities}.
+     * @param policy          What full queues do with new messages.
+     * @param capacities      Capacities of specific micro-services by name, may be null.
+     * @param coalesced       The broadcast types {@link OverflowPolicy#COALESCE} coalesces, may be null for none.
+     */
+    public MailboxSettings(Kind kind, int defaultCapacity, OverflowPolicy policy, Map<String, Integer> capacities,
+                           Set<Class<? extends Broadcast>> coalesced) {
+        if (kind == null || policy == null)
+            throw new IllegalArgumentException("Missing mailbox kind or overflow policy");
+        if (kind == Kind.RING && policy != OverflowPolicy.BLOCK && policy != OverflowPolicy.DROP_NEWEST)
+            throw new IllegalArgumentException(policy + " is not supported by ring mailboxes");
+        this.kind = kind;
+        this.defaultCapacity = defaultCapacity;
+        this.policy = policy;
+        this.capacities = capacities == null ? Collections.emptyMap() : new HashMap<>(capacities);
+        this.coalesced = coalesced == null ? Collections.emptySet() : new HashSet<>(coalesced);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getCapacity(MicroService m) {
+        Integer capacity = capacities.get(m.getName());
+        return capacity == null ? defaultCapacity : capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public Set<Class<? extends Broadcast>> getCoalescedTypes() {
+        return Collections.unmodifiableSet(coalesced);
+    }
+
+    /**
+     * @return a new message queue for {@code m}.
+     */
+    BlockingQueue<Message> createMailbox(MicroService m) {
+        return newMailbox(kind, getCapacity(m), policy, coalesced);
+    }
+
+    /**
+     * @return a new message queue of the given kind, as the message-bus allocates them - e.g. for benchmarking the
+     * queues on their own. A capacity of 0 or less is handled as in the settings.
+     */
+    public static BlockingQueue<Message> newMailbox(Kind kind, int capacity, OverflowPolicy policy) {
+        return newMailbox(kind, capacity, policy, Collections.emptySet());
+    }
+
+    private static BlockingQueue<Message> newMailbox(Kind kind, int capacity, OverflowPolicy policy,
+                                                     Set<Class<? extends Broadcast>> coalesced) {
+        if (kind == Kind.RING)
+            return new RingMailbox(capacity > 0 ? capacity : DEFAULT_RING_CAPACITY, policy);
+        if (capacity <= 0) // the policy and the coalesced types only matter once a queue is full
+            return new LinkedBlockingQueue<>();
+        return new BoundedMailbox(capacity, policy, coalesced);
+    }
+}
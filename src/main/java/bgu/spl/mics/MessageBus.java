@@ -1,5 +1,8 @@
 package bgu.spl.mics;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * The message-bus is a shared object used for communication between
  * micro-services.
@@ -57,9 +60,34 @@ public interface MessageBus {
      * @param e     	The event to add to the queue.
      * @return {@link Future<T>} object to be resolved once the processing is complete,
      * 	       null in case no micro-service has subscribed to {@code e.getClass()}.
+     * 	       If a full queue drops the event (see {@link OverflowPolicy}), the future is resolved with null.
      */
     <T> Future<T> sendEvent(Event<T> e);
 
+    /**
+     * Adds every {@link Event} in {@code events} to the message queue of one of the
+     * micro-services subscribed to its type, exactly as if {@link #sendEvent(Event)} was
+     * called for each of them in order. The subscribers of each event type are looked up
+     * once per batch and every target queue receives its share of the batch in a single hand-off.
+     * This method should be non-blocking.
+     * <p>
+     * @param <T>    	The type of the result expected by the events and their corresponding future objects.
+     * @param events 	The events to add to the queues.
+     * @return a list of {@link Future<T>} objects, one for each event and in the same order.
+     * 	       An entry is null in case no micro-service has subscribed to the type of its event.
+     */
+    <T> List<Future<T>> sendEvents(List<? extends Event<T>> events);
+
+    /**
+     * Adds every {@link Broadcast} in {@code broadcasts} to the message queues of all the
+     * micro-services subscribed to its type, exactly as if {@link #sendBroadcast(Broadcast)}
+     * was called for each of them in order. Each subscriber receives its share of the batch
+     * in a single hand-off.
+     * <p>
+     * @param broadcasts 	The messages to add to the queues.
+     */
+    void sendBroadcasts(List<? extends Broadcast> broadcasts);
+
     /**
      * Allocates a message-queue for the {@link MicroService} {@code m}.
      * <p>
@@ -93,5 +121,26 @@ public interface MessageBus {
      *                              to became available.
      */
     Message awaitMessage(MicroService m) throws InterruptedException;
+
+    /**
+     * Using this method, a <b>registered</b> micro-service can take up to
+     * {@code maxMessages} messages from its allocated queue in one call.
+     * This method is blocking meaning that if no messages are available
+     * in the micro-service queue it should wait until a message becomes
+     * available, and then add it together with the messages that are
+     * already waiting behind it (without waiting any longer) to {@code batch},
+     * in queue order.
+     * The method should throw the {@link IllegalStateException} in the case
+     * where {@code m} was never registered.
+     * <p>
+     * @param m           The micro-service requesting to take messages from its message
+     *                    queue.
+     * @param batch       The collection the taken messages are added to.
+     * @param maxMessages The maximal number of messages to take.
+     * @return The number of messages added to {@code batch} (at least 1).
+     * @throws InterruptedException if interrupted while waiting for a message
+     *                              to became available.
+     */
+    int awaitMessages(MicroService m, Collection<? super Message> batch, int maxMessages) throws InterruptedException;
     
 }
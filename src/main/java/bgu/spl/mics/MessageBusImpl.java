@@ -1,9 +1,14 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
@@ -16,17 +21,18 @@ public class MessageBusImpl implements MessageBus {
 		private static MessageBusImpl instance = new MessageBusImpl();
 	}
 	private ConcurrentHashMap<MicroService, BlockingQueue<Message>> serviceMap;
-	private ConcurrentHashMap<Class<? extends Event>, BlockingQueue<MicroService>> eventSubscribers;  //done
-	private ConcurrentHashMap<Class<? extends Broadcast>, BlockingQueue<MicroService>> broadcastSubscribers; //done
-	private ConcurrentHashMap<Class<? extends Event>, AtomicInteger> eventIndex; //AtomicInteger is thread safe
-	private ConcurrentHashMap<Event, Future> futureEvents;
+	private ConcurrentHashMap<Class<? extends Event>, Subscribers> eventSubscribers;  //round-robin order is kept inside Subscribers
+	private ConcurrentHashMap<Class<? extends Broadcast>, Subscribers> broadcastSubscribers;
+	private Map<Event<?>, Future<?>> unresolvedEvents; //events taken by awaitMessage, weak so never-completed events are not kept
+	private volatile MailboxSettings mailboxSettings;
+	private volatile MessageBusMetrics metrics; //null unless enabled
 
 	private MessageBusImpl() {
 		serviceMap = new ConcurrentHashMap<>();
 		eventSubscribers = new ConcurrentHashMap<>();
 		broadcastSubscribers = new ConcurrentHashMap<>();
-		eventIndex = new ConcurrentHashMap<>();
-		futureEvents = new ConcurrentHashMap<>();
+		unresolvedEvents = Collections.synchronizedMap(new WeakHashMap<>());
+		mailboxSettings = MailboxSettings.UNBOUNDED;
 	}
 
 	public static MessageBusImpl getInstance() {
@@ -37,73 +43,297 @@ public class MessageBusImpl implements MessageBus {
 		return serviceMap;
 	}
 
-	public ConcurrentHashMap<Class<? extends Broadcast>, BlockingQueue<MicroService>> getBroadcastSubscribers() {
+	/**
+	 * Sets the capacities and overflow policy of the message queues of micro-services registered from now on.
+	 */
+	public void setMailboxSettings(MailboxSettings mailboxSettings) {
+		this.mailboxSettings = mailboxSettings;
+	}
+
+	/**
+	 * Enables the given metrics for messages sent from now on, or disables metrics if {@code metrics} is null.
+	 */
+	public void setMetrics(MessageBusMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the enabled metrics, or null if metrics are disabled.
+	 */
+	public MessageBusMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the largest number of messages that were waiting in the queue of {@code m} at once,
+	 *         or -1 if {@code m} is not registered.
+	 */
+	public int getHighWaterMark(MicroService m) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		return queue instanceof Mailbox ? ((Mailbox) queue).getHighWaterMark() : -1;
+	}
+
+	/**
+	 * @return the number of events handed out that were not completed yet and are still referenced
+	 *         (events handled by the event loop of a micro-service and completed there are never counted).
+	 */
+	public int getUnresolvedEventCount() {
+		return unresolvedEvents.size();
+	}
+
+	ConcurrentHashMap<Class<? extends Broadcast>, Subscribers> getBroadcastSubscribers() {
 		return broadcastSubscribers;
 	}
 
-	public ConcurrentHashMap<Class<? extends Event>, BlockingQueue<MicroService>> getEventSubscribers() {
+	ConcurrentHashMap<Class<? extends Event>, Subscribers> getEventSubscribers() {
 		return eventSubscribers;
 	}
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		synchronized (eventSubscribers) { //synchronized (with itself) so 2 threads will not make new lists for same type
-			eventSubscribers.computeIfAbsent(type, k-> new LinkedBlockingQueue<>()).add(m);
-			eventIndex.put(type, new AtomicInteger(0));
-		}
+		eventSubscribers.computeIfAbsent(type, k -> new Subscribers()).add(m); //computeIfAbsent is atomic, so 2 threads will not make new lists for same type
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-		synchronized (broadcastSubscribers) {
-			if (broadcastSubscribers.containsKey(type)) {
-				broadcastSubscribers.get(type).add(m);
-			} else {
-				BlockingQueue<MicroService> newType = new LinkedBlockingQueue<>();
-				newType.add(m);
-				broadcastSubscribers.put(type, newType);
-			}
-		}
+		broadcastSubscribers.computeIfAbsent(type, k -> new Subscribers()).add(m);
 	}
 
 	@Override
+	@SuppressWarnings("unchecked") //sendEvent keys every Future<T> by its own Event<T>
 	public <T> void complete(Event<T> e, T result) {
-		Future<T> currFuture = futureEvents.get(e);
-		currFuture.resolve(result); //resolved according to the result given as a parameter
+		Future<T> currFuture = (Future<T>) unresolvedEvents.remove(e);
+		if (currFuture != null)
+			currFuture.resolve(result); //resolved according to the result given as a parameter
 	}
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
-		BlockingQueue<MicroService> subscribers = broadcastSubscribers.get(b.getClass());
-		synchronized (subscribers) { //synchronized with unregister
-			for (MicroService m : subscribers) {
-				if(serviceMap.get(m) != null)
-					serviceMap.get(m).add(b);
-			}
+		MessageBusMetrics metrics = this.metrics;
+		if (metrics != null)
+			metrics.onSent(b.getClass(), 1);
+		Subscribers subscribers = broadcastSubscribers.get(b.getClass());
+		if (subscribers == null)
+			return;
+		Message message = metrics == null ? b : new StampedBroadcast(b, System.nanoTime());
+		for (MicroService m : subscribers.snapshot()) { //the snapshot never changes, even if m unregisters meanwhile
+			deliver(m, message);
 		}
 	}
 
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
-		BlockingQueue<MicroService> subscribers = eventSubscribers.get(e.getClass());
-		synchronized (subscribers) {  //synchronized only with unregister
-			if (subscribers == null || subscribers.isEmpty())  //If there is no suitable Micro-Service
-				return null;
-			MicroService m = subscribers.poll();
-			if(m == null){
-				return null;
+		MessageBusMetrics metrics = this.metrics;
+		if (metrics != null)
+			metrics.onSent(e.getClass(), 1);
+		Subscribers subscribers = eventSubscribers.get(e.getClass());
+		if (subscribers == null)  //If there is no suitable Micro-Service
+			return null;
+		Future<T> future = new Future<>();
+		return route(subscribers, new Envelope<>(e, future, metrics == null ? 0 : System.nanoTime())) ? future : null;
+	}
+
+	@Override
+	public <T> List<Future<T>> sendEvents(List<? extends Event<T>> events) {
+		int size = events.size();
+		MessageBusMetrics metrics = this.metrics;
+		long sentNanos = metrics == null ? 0 : System.nanoTime();
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Future<T>[] futures = new Future[size];
+		Message[] messages = new Message[size];
+		int[] receivers = new int[size];
+		Batch batch = new Batch();
+		//pick a target for every event, with one lookup and one cursor update for each run of events of the same type
+		for (int start = 0, end; start < size; start = end) {
+			Class<?> type = events.get(start).getClass();
+			end = start + 1;
+			while (end < size && events.get(end).getClass() == type)
+				end++;
+			if (metrics != null)
+				metrics.onSent(type, end - start);
+			Subscribers subscribers = eventSubscribers.get(type);
+			MicroService[] snapshot = subscribers == null ? null : subscribers.snapshot();
+			if (snapshot == null || snapshot.length == 0) {
+				Arrays.fill(receivers, start, end, -1);
+				continue;
+			}
+			int[] receiverOf = batch.receiversOf(snapshot);
+			int ticket = subscribers.reserve(end - start);
+			for (int i = start; i < end; i++) {
+				futures[i] = new Future<>();
+				messages[i] = new Envelope<>(events.get(i), futures[i], sentNanos);
+				receivers[i] = batch.count(receiverOf[Subscribers.turn(ticket++, snapshot.length)], 1);
 			}
-			subscribers.add(m);
-			serviceMap.get(m).add(e); //Add the event to the m queue by curr index
 		}
-		Future<T> future = new Future<>();
-		futureEvents.put(e, future);
-		return future;
+		//queue each target's share of the batch, in the order of the batch, in a single hand-off
+		int[] positions = batch.positions();
+		Message[] grouped = new Message[positions[batch.size]];
+		int[] indices = new int[grouped.length]; //the index in the batch of each grouped message
+		int[] next = Arrays.copyOf(positions, batch.size);
+		for (int i = 0; i < size; i++) {
+			if (receivers[i] >= 0) {
+				indices[next[receivers[i]]] = i;
+				grouped[next[receivers[i]]++] = messages[i];
+			}
+		}
+		for (int r = 0; r < batch.size; r++) {
+			if (!deliver(batch.services[r], grouped, positions[r], positions[r + 1])) {
+				//the target unregistered meanwhile - route its share one by one
+				for (int p = positions[r]; p < positions[r + 1]; p++) {
+					Envelope<?> envelope = (Envelope<?>) grouped[p];
+					if (!route(eventSubscribers.get(envelope.getEvent().getClass()), envelope))
+						futures[indices[p]] = null;
+				}
+			}
+		}
+		return Arrays.asList(futures);
+	}
+
+	@Override
+	public void sendBroadcasts(List<? extends Broadcast> broadcasts) {
+		int size = broadcasts.size();
+		MessageBusMetrics metrics = this.metrics;
+		long sentNanos = metrics == null ? 0 : System.nanoTime();
+		int[][] receivers = new int[size][]; //the targets of each broadcast, shared by a run of the same type
+		Batch batch = new Batch();
+		for (int start = 0, end; start < size; start = end) {
+			Class<?> type = broadcasts.get(start).getClass();
+			end = start + 1;
+			while (end < size && broadcasts.get(end).getClass() == type)
+				end++;
+			if (metrics != null)
+				metrics.onSent(type, end - start);
+			Subscribers subscribers = broadcastSubscribers.get(type);
+			int[] receiverOf = batch.receiversOf(subscribers == null ? new MicroService[0] : subscribers.snapshot());
+			for (int receiver : receiverOf)
+				batch.count(receiver, end - start);
+			Arrays.fill(receivers, start, end, receiverOf);
+		}
+		int[] positions = batch.positions();
+		Message[] grouped = new Message[positions[batch.size]];
+		int[] next = Arrays.copyOf(positions, batch.size);
+		for (int i = 0; i < size; i++) {
+			Message message = metrics == null ? broadcasts.get(i) : new StampedBroadcast(broadcasts.get(i), sentNanos);
+			for (int receiver : receivers[i])
+				grouped[next[receiver]++] = message;
+		}
+		for (int r = 0; r < batch.size; r++)
+			deliver(batch.services[r], grouped, positions[r], positions[r + 1]);
 	}
 
+	/**
+	 * The distinct targets of a batch of messages, and how many messages each of them receives.
+	 */
+	private static class Batch {
+		MicroService[] services = new MicroService[4];
+		int[] counts = new int[4];
+		int size = 0;
+
+		/**
+		 * @return the number of the target of each subscriber in {@code snapshot}, adding the new ones.
+		 */
+		int[] receiversOf(MicroService[] snapshot) {
+			int[] receivers = new int[snapshot.length];
+			for (int s = 0; s < snapshot.length; s++) {
+				int r = 0;
+				while (r < size && services[r] != snapshot[s])
+					r++;
+				if (r == size) {
+					if (size == services.length) {
+						services = Arrays.copyOf(services, size * 2);
+						counts = Arrays.copyOf(counts, size * 2);
+					}
+					services[size++] = snapshot[s];
+				}
+				receivers[s] = r;
+			}
+			return receivers;
+		}
+
+		int count(int receiver, int messages) {
+			counts[receiver] += messages;
+			return receiver;
+		}
+
+		/**
+		 * @return where the messages of each target start in the grouped batch, followed by the size of the batch.
+		 */
+		int[] positions() {
+			int[] positions = new int[size + 1];
+			for (int r = 0; r < size; r++)
+				positions[r + 1] = positions[r] + counts[r];
+			return positions;
+		}
+	}
+
+	/**
+	 * Queues {@code envelope} to the subscriber whose turn it is. A subscriber may unregister between being
+	 * picked and being queued to - then the next one is tried.
+	 * @return false if no subscriber is registered.
+	 */
+	private <T> boolean route(Subscribers subscribers, Envelope<T> envelope) {
+		for (int attempts = subscribers.size(); attempts > 0; attempts--) {
+			MicroService m = subscribers.next();
+			if (m == null)
+				break;
+			if (deliver(m, envelope))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds {@code message} to the queue of {@code m}. If the queue drops it, {@link #dropped(Message)} is called.
+	 * @return false if {@code m} is not registered.
+	 */
+	private boolean deliver(MicroService m, Message message) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		if (queue == null)
+			return false;
+		if (queue instanceof Mailbox)
+			((Mailbox) queue).deliver(message); //a mailbox hands its drops to dropped() itself
+		else if (!queue.offer(message))
+			dropped(message);
+		m.messageArrived();
+		return true;
+	}
+
+	/**
+	 * Adds {@code messages[from]} to {@code messages[to - 1]} to the queue of {@code m}, taking its lock once.
+	 * @return false if {@code m} is not registered.
+	 */
+	private boolean deliver(MicroService m, Message[] messages, int from, int to) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		if (queue == null)
+			return false;
+		if (queue instanceof Mailbox) {
+			((Mailbox) queue).addBatch(messages, from, to);
+		} else {
+			for (int i = from; i < to; i++) {
+				if (!queue.offer(messages[i]))
+					dropped(messages[i]);
+			}
+		}
+		m.messageArrived();
+		return true;
+	}
+
+	/**
+	 * Called for every message a queue dropped because it was full: the future of a dropped event is resolved with
+	 * null, so its sender does not wait for it forever.
+	 */
+	private void dropped(Message message) {
+		if (message instanceof Envelope)
+			((Envelope<?>) message).getFuture().resolve(null);
+		MessageBusMetrics metrics = this.metrics;
+		if (metrics != null)
+			metrics.onDropped(Envelope.unwrap(message).getClass());
+	}
 
 	@Override
 	public void register(MicroService m) {
-		BlockingQueue<Message> messageQueue = new LinkedBlockingQueue<>();
+		BlockingQueue<Message> messageQueue = mailboxSettings.createMailbox(m);
+		if (messageQueue instanceof Mailbox)
+			((Mailbox) messageQueue).setDropListener(this::dropped);
 		serviceMap.put(m, messageQueue);
 		synchronized (m){
 			m.notifyAll();
@@ -112,34 +342,103 @@ public class MessageBusImpl implements MessageBus {
 
 	@Override
 	public void unregister(MicroService m) { //should be all synchronized?
+		BlockingQueue<Message> messageQueue;
 		synchronized (m) {
-			serviceMap.remove(m);  //deletes the broadcast queue
+			messageQueue = serviceMap.remove(m);  //deletes the broadcast queue
 		}
+		if (messageQueue instanceof Mailbox)
+			((Mailbox) messageQueue).close(); //senders waiting for room must not wait for m anymore
 		//delete m in eventSubscribers
-		for (BlockingQueue<MicroService> subscribers : eventSubscribers.values()) {
-			synchronized (subscribers) {  //synchronized only with send event
-				if (subscribers.contains(m)) {
-					subscribers.remove(m);
-				}
-			}
+		for (Subscribers subscribers : eventSubscribers.values()) {
+			subscribers.remove(m);
 		}
 		//delete m in broadcastSubscribers
-		for (BlockingQueue<MicroService> subscribers : broadcastSubscribers.values()) {
-			synchronized (subscribers) {
-				if (subscribers.contains(m)) {
-					subscribers.remove(m);
-				}
-			}
+		for (Subscribers subscribers : broadcastSubscribers.values()) {
+			subscribers.remove(m);
 		}
 	}
 
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
+		return unwrap(take(m));
+	}
+
+	@Override
+	public int awaitMessages(MicroService m, Collection<? super Message> batch, int maxMessages) throws InterruptedException {
+		List<Message> taken = new ArrayList<>();
+		int count = take(m, taken, maxMessages);
+		for (Message message : taken)
+			batch.add(unwrap(message));
+		return count;
+	}
+
+	/**
+	 * Like {@link #awaitMessage(MicroService)}, but an event is returned in its {@link Envelope},
+	 * so the micro-service can complete it directly.
+	 */
+	Message take(MicroService m) throws InterruptedException {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		if (queue == null)
+			throw new IllegalStateException(m.getName() + " is not registered");
 		try {
-			return serviceMap.get(m).take();
+			return queue.take();
 		}catch (InterruptedException e){
 			Thread.currentThread().interrupt();
 			throw e;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Like {@link #awaitMessages(MicroService, Collection, int)}, but events are returned in their {@link Envelope}s,
+	 * so the micro-service can complete them directly.
+	 */
+	int take(MicroService m, Collection<? super Message> batch, int maxMessages) throws InterruptedException {
+		batch.add(take(m));
+		return 1 + serviceMap.get(m).drainTo(batch, maxMessages - 1); //one lock for everything that is already waiting
+	}
+
+	/**
+	 * Takes up to {@code maxMessages} messages from the queue of {@code m} without blocking.
+	 * Events are returned in their {@link Envelope}s.
+	 * @return the number of messages added to {@code batch} (0 if {@code m} is not registered).
+	 */
+	int pollMessages(MicroService m, Collection<? super Message> batch, int maxMessages) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		if (queue == null)
+			return 0;
+		return queue.drainTo(batch, maxMessages);
+	}
+
+	/**
+	 * Remembers the future of an event that was handed out without being completed, so a later
+	 * {@link #complete(Event, Object)} still finds it.
+	 */
+	void park(Envelope<?> envelope) {
+		unresolvedEvents.put(envelope.getEvent(), envelope.getFuture());
+	}
+
+	private Message unwrap(Message message) {
+		MessageBusMetrics metrics = this.metrics;
+		if (metrics != null)
+			metrics.onDequeued(message, System.nanoTime());
+		if (message instanceof Envelope)
+			park((Envelope<?>) message);
+		return Envelope.unwrap(message);
+	}
+
+	/**
+	 * @return the number of messages waiting in the queue of {@code m} (0 if {@code m} is not registered).
+	 */
+	int queuedMessages(MicroService m) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		return queue == null ? 0 : queue.size();
+	}
+
+	/**
+	 * @return true if {@code m} is registered and its queue is not empty.
+	 */
+	boolean hasMessages(MicroService m) {
+		BlockingQueue<Message> queue = serviceMap.get(m);
+		return queue != null && !queue.isEmpty();
+	}
+}
@@ -0,0 +1,203 @@
+package bgu.spl.mics;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in instrumentation of the message-bus, enabled by {@link MessageBusImpl#setMetrics(MessageBusMetrics)}.
+ * Records, per message type, how many messages were sent, how long they waited in the message queues
+ * (from send to being taken by the event loop) and how long their callbacks ran; and per micro-service,
+ * how many messages were waiting in its queue whenever its event loop woke up.
+ * <p>
+ * Times are in nanoseconds. The metrics can be read through JMX or dumped periodically to a JSON file.
+ */
+public class MessageBusMetrics implements MessageBusMetricsMXBean {
+    public static final String OBJECT_NAME = "bgu.spl.mics:type=MessageBusMetrics";
+
+    private final ConcurrentHashMap<Class<?>, TypeStats> types;
+    private final ConcurrentHashMap<String, Histogram> depths;
+    private volatile long startNanos;
+    private ScheduledExecutorService dumper;
+    private String dumpFilePath;
+
+    private static class TypeStats {
+        final LongAdder sent = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final Histogram queueLatency = new Histogram();
+        final Histogram callbackTime = new Histogram();
+    }
+
+    public MessageBusMetrics() {
+        types = new ConcurrentHashMap<>();
+        depths = new ConcurrentHashMap<>();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Called by the message-bus when {@code count} messages of type {@code type} are sent.
+     */
+    void onSent(Class<?> type, int count) {
+        statsOf(type).sent.add(count);
+    }
+
+    /**
+     * Called by the message-bus when a full message queue dropped a message of type {@code type}.
+     */
+    void onDropped(Class<?> type) {
+        statsOf(type).dropped.increment();
+    }
+
+    /**
+     * Called when {@code message}, as it was queued, is taken from a message queue at {@code nowNanos}.
+     */
+    void onDequeued(Message message, long nowNanos) {
+        long sentNanos = Envelope.sentNanos(message);
+        if (sentNanos != 0)
+            statsOf(Envelope.unwrap(message).getClass()).queueLatency.record(nowNanos - sentNanos);
+    }
+
+    /**
+     * Called after the callback of a message of type {@code type} ran for {@code nanos}.
+     */
+    void onHandled(Class<?> type, long nanos) {
+        statsOf(type).callbackTime.record(nanos);
+    }
+
+    /**
+     * Called when the event loop of the service named {@code service} wakes up to {@code depth} waiting messages.
+     */
+    void onDepth(String service, int depth) {
+        depths.computeIfAbsent(service, k -> new Histogram()).record(depth);
+    }
+
+    @Override
+    public long getSentCount() {
+        long sent = 0;
+        for (TypeStats stats : types.values())
+            sent += stats.sent.sum();
+        return sent;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (TypeStats stats : types.values())
+            dropped += stats.dropped.sum();
+        return dropped;
+    }
+
+    @Override
+    public void reset() {
+        types.clear();
+        depths.clear();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the metrics recorded so far as nested maps: "messages" by type name and "mailboxDepth" by service name.
+     */
+    public Map<String, Object> snapshot() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        Map<String, Object> messages = new TreeMap<>();
+        for (Map.Entry<Class<?>, TypeStats> entry : types.entrySet()) {
+            TypeStats stats = entry.getValue();
+            Map<String, Object> type = new LinkedHashMap<>();
+            type.put("sent", stats.sent.sum());
+            type.put("sentPerSecond", Math.round(stats.sent.sum() / seconds));
+            type.put("dropped", stats.dropped.sum());
+            type.put("queueLatencyNanos", stats.queueLatency.summary());
+            type.put("callbackNanos", stats.callbackTime.summary());
+            messages.put(entry.getKey().getSimpleName(), type);
+        }
+        Map<String, Object> services = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : depths.entrySet())
+            services.put(entry.getKey(), entry.getValue().summary());
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("uptimeMillis", Math.round(seconds * 1000));
+        report.put("messages", messages);
+        report.put("mailboxDepth", services);
+        return report;
+    }
+
+    @Override
+    public String getReport() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(snapshot());
+    }
+
+    /**
+     * Writes {@link #getReport()} to {@code filePath}, replacing its content.
+     */
+    public void writeReport(String filePath) {
+        try (FileWriter writer = new FileWriter(filePath)) {
+            writer.write(getReport());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as {@value #OBJECT_NAME},
+     * replacing metrics registered before.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the report to {@code filePath} every {@code periodMillis} milliseconds, on a daemon thread,
+     * until {@link #stopDumping()} is called.
+     */
+    public synchronized void startDumping(String filePath, long periodMillis) {
+        stopDumping();
+        dumpFilePath = filePath;
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> writeReport(filePath), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dump, writing the report one last time.
+     */
+    public synchronized void stopDumping() {
+        if (dumper == null)
+            return;
+        dumper.shutdownNow();
+        try {
+            dumper.awaitTermination(1, TimeUnit.SECONDS); //a dump in progress must not interleave with the last one
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dumper = null;
+        writeReport(dumpFilePath);
+    }
+
+    private TypeStats statsOf(Class<?> type) {
+        TypeStats stats = types.get(type);
+        return stats != null ? stats : types.computeIfAbsent(type, k -> new TypeStats());
+    }
+}
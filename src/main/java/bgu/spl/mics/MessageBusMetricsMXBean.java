@@ -0,0 +1,27 @@
+package bgu.spl.mics;
+
+/**
+ * The management interface of {@link MessageBusMetrics}, registered as {@value MessageBusMetrics#OBJECT_NAME}.
+ */
+public interface MessageBusMetricsMXBean {
+
+    /**
+     * @return the current report, in the JSON form written to the periodic dump file.
+     */
+    String getReport();
+
+    /**
+     * @return the number of messages sent since the metrics were enabled or reset.
+     */
+    long getSentCount();
+
+    /**
+     * @return the number of messages dropped by full message queues since the metrics were enabled or reset.
+     */
+    long getDroppedCount();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
@@ -1,5 +1,9 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -23,9 +27,13 @@ import java.util.concurrent.ConcurrentHashMap;
 public abstract class MicroService implements Runnable {
 
     private boolean terminated = false;
+    private int batchSize = 1;
     private final String name;
     private ConcurrentHashMap<Class<? extends Event>,Callback<?>> callBackEventMap;  //Callback<MicroService>
     private ConcurrentHashMap<Class<? extends Broadcast>,Callback<?>> callBackBroadcastMap;
+    private volatile Runnable messageListener; // set by schedulers that do not block in awaitMessage
+    private final Map<Event<?>, Envelope<?>> pendingEvents; // envelopes of the events of the current batch
+    private Envelope<?> currentEvent; // envelope of the event whose callback is running
     protected final MessageBusImpl messageBus;
     //protected final CountDownLatch latch;
 
@@ -38,6 +46,7 @@ public abstract class MicroService implements Runnable {
         this.name = name;
         callBackEventMap = new ConcurrentHashMap<>();
         callBackBroadcastMap = new ConcurrentHashMap<>();
+        pendingEvents = new IdentityHashMap<>();
         messageBus = MessageBusImpl.getInstance();
         //this.latch = latch;
     }
@@ -112,6 +121,19 @@ public abstract class MicroService implements Runnable {
         return messageBus.sendEvent(e);
     }
 
+    /**
+     * Sends all the events in {@code events} using the message-bus in a single batch.
+     * Like {@link #sendEvent(Event)}, this method is Non-Blocking.
+     * <p>
+     * @param <T>       The type of the expected result of the events
+     * @param events    The events to send
+     * @return  		a list of {@link Future<T>} objects, one for each event and in the same order.
+     * 	       			An entry is null in case no micro-service has subscribed to the type of its event.
+     */
+    protected final <T> List<Future<T>> sendEvents(List<? extends Event<T>> events) {
+        return messageBus.sendEvents(events);
+    }
+
     /**
      * A Micro-Service calls this method in order to send the broadcast message {@code b} using the message-bus
      * to all the services subscribed to it.
@@ -122,6 +144,16 @@ public abstract class MicroService implements Runnable {
         messageBus.sendBroadcast(b);
     }
 
+    /**
+     * A Micro-Service calls this method in order to send all the broadcast messages in {@code broadcasts}
+     * using the message-bus in a single batch.
+     * <p>
+     * @param broadcasts The broadcast messages to send
+     */
+    protected final void sendBroadcasts(List<? extends Broadcast> broadcasts) {
+        messageBus.sendBroadcasts(broadcasts);
+    }
+
     /**
      * Completes the received request {@code e} with the result {@code result}
      * using the message-bus.
@@ -132,8 +164,15 @@ public abstract class MicroService implements Runnable {
      * @param result The result to resolve the relevant Future object.
      *               {@code e}.
      */
+    @SuppressWarnings("unchecked") //an envelope is only ever found by the Event<T> it carries
     protected final <T> void complete(Event<T> e, T result) {
-        messageBus.complete(e,result);
+        Envelope<T> envelope = (Envelope<T>) currentEvent;
+        if (envelope == null || envelope.getEvent() != e)
+            envelope = (Envelope<T>) pendingEvents.remove(e);
+        if (envelope != null)
+            envelope.complete(result); //the future travels with the event, no lookup in the message-bus
+        else
+            messageBus.complete(e,result);
     }
 
     /**
@@ -141,6 +180,84 @@ public abstract class MicroService implements Runnable {
      */
     protected abstract void initialize();
 
+    /**
+     * Sets the maximal number of messages the event loop takes from the message queue at once.
+     * With a size larger than 1, every wakeup of the event loop takes the next message together with the
+     * messages already waiting behind it, and passes them to {@link #handleBatch(List)} in queue order.
+     * <p>
+     * @param batchSize The maximal number of messages in a batch (1 takes the messages one by one).
+     */
+    protected final void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Handles the messages taken from the message queue in a single wakeup of the event loop.
+     * The default implementation dispatches them one by one, in order. Services that benefit from seeing
+     * the whole batch (e.g. to do expensive work once per batch instead of once per message) may override
+     * this method and call {@link #dispatch(Message)} themselves.
+     * <p>
+     * @param batch The messages taken, in queue order. The list is reused by the event loop and must not be kept.
+     */
+    protected void handleBatch(List<Message> batch) {
+        for (Message message : batch) {
+            dispatch(message);
+        }
+    }
+
+    /**
+     * Calls the callback subscribed for the type of {@code message}.
+     * Does nothing once the service has terminated, so the rest of a batch is ignored after termination.
+     * <p>
+     * @param message The message to handle.
+     */
+    protected final void dispatch(Message message) {
+        if (terminated || message == null)
+            return;
+        Callback<Message> callback;
+        if (message instanceof Event) {
+            Envelope<?> envelope = pendingEvents.remove(message);
+            callback = (Callback<Message>) callBackEventMap.get(message.getClass());
+            currentEvent = envelope;
+            try {
+                call(callback, message);
+            } finally {
+                currentEvent = null;
+                if (envelope != null && !envelope.isCompleted())
+                    messageBus.park(envelope); //may still be completed later
+            }
+        }
+        if (message instanceof Broadcast) {
+            callback = (Callback<Message>) callBackBroadcastMap.get(message.getClass());
+            call(callback, message);
+        }
+    }
+
+    private void call(Callback<Message> callback, Message message) {
+        if (callback == null)
+            return;
+        MessageBusMetrics metrics = messageBus.getMetrics();
+        if (metrics == null) {
+            callback.call(message);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            callback.call(message);
+        } finally {
+            metrics.onHandled(message.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return true if {@link #terminate()} was called.
+     */
+    protected final boolean isTerminated() {
+        return terminated;
+    }
+
     /**
      * Signals the event loop that it must terminate after handling the current
      * message.
@@ -164,28 +281,91 @@ public abstract class MicroService implements Runnable {
      */
     @Override
     public final void run() {
-        messageBus.register(this); //why didnt we do it?
-        initialize();
-        //messageBus.decreaseInitializeCounter();
+        bootstrap();
+        List<Message> batch = new ArrayList<>();
         while (!terminated) {
             try {
-                Message message = messageBus.awaitMessage(this);
-                if (message != null) {
-                    Callback<Message> callback;
-                    if (message instanceof Event) {
-                        callback = (Callback<Message>) callBackEventMap.get(message.getClass());
-                        if (callback != null)
-                            callback.call(message);
-                    }
-                    if (message instanceof Broadcast) {
-                        callback = (Callback<Message>) callBackBroadcastMap.get(message.getClass());
-                        if (callback != null)
-                            callback.call(message);
-                    }
-                }
+                batch.clear();
+                if (batchSize > 1)
+                    messageBus.take(this, batch, batchSize);
+                else
+                    batch.add(messageBus.take(this));
+                handleEnvelopes(batch);
             } catch (InterruptedException e) {
                 terminate();
             }
         }
     }
+
+    /**
+     * Registers this service and initializes it - the part of {@link #run()} before the event loop.
+     */
+    final void bootstrap() {
+        messageBus.register(this); //why didnt we do it?
+        initialize();
+        //messageBus.decreaseInitializeCounter();
+    }
+
+    /**
+     * Handles up to {@code maxMessages} of the messages already waiting in the queue, without blocking -
+     * one step of the event loop for schedulers that do not keep a thread per service.
+     * <p>
+     * @param batch       An empty list to reuse for the batch.
+     * @param maxMessages The maximal number of messages to handle.
+     */
+    final void handleAvailable(List<Message> batch, int maxMessages) {
+        batch.clear();
+        if (messageBus.pollMessages(this, batch, maxMessages) > 0)
+            handleEnvelopes(batch);
+        batch.clear();
+    }
+
+    /**
+     * Takes the events of {@code batch} out of their envelopes and passes the batch to {@link #handleBatch(List)}.
+     * The envelopes are kept aside, so {@link #complete(Event, Object)} resolves their futures directly.
+     */
+    private void handleEnvelopes(List<Message> batch) {
+        MessageBusMetrics metrics = messageBus.getMetrics();
+        long now = 0;
+        if (metrics != null) {
+            now = System.nanoTime();
+            metrics.onDepth(getName(), batch.size() + messageBus.queuedMessages(this));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Message message = batch.get(i);
+            if (metrics != null)
+                metrics.onDequeued(message, now);
+            if (message instanceof Envelope) {
+                Envelope<?> envelope = (Envelope<?>) message;
+                pendingEvents.put(envelope.getEvent(), envelope);
+                batch.set(i, envelope.getEvent());
+            } else if (message instanceof StampedBroadcast) {
+                batch.set(i, ((StampedBroadcast) message).getBroadcast());
+            }
+        }
+        try {
+            handleBatch(batch);
+        } finally {
+            for (Envelope<?> envelope : pendingEvents.values())
+                messageBus.park(envelope); //not dispatched (e.g. after termination) - may still be completed later
+            pendingEvents.clear();
+        }
+    }
+
+    /**
+     * @param listener Called by the message-bus whenever a message is added to the queue of this service,
+     *                 or null for none.
+     */
+    final void setMessageListener(Runnable listener) {
+        messageListener = listener;
+    }
+
+    /**
+     * Called by the message-bus after a message was added to the queue of this service.
+     */
+    final void messageArrived() {
+        Runnable listener = messageListener;
+        if (listener != null)
+            listener.run();
+    }
 }
@@ -0,0 +1,50 @@
+package bgu.spl.mics;
+
+/**
+ * Decides on which threads micro-services run.
+ * <ul>
+ * <li>{@code "platform"} - every micro-service gets its own platform thread, which blocks while its queue is empty.</li>
+ * <li>{@code "virtual"} - every micro-service gets its own virtual thread (Java 21 and later; falls back to
+ *     platform threads on older JVMs).</li>
+ * <li>{@code "executor"} - micro-services share a fixed number of worker threads. A micro-service is handed to
+ *     a worker only when messages arrive to its queue, so an idle micro-service holds no thread at all.</li>
+ * </ul>
+ */
+public interface MicroServiceScheduler {
+
+    /**
+     * Starts running {@code m}: registers it, initializes it and handles its messages until it terminates.
+     * <p>
+     * @param m The micro-service to run.
+     */
+    void start(MicroService m);
+
+    /**
+     * Waits until every micro-service started by this scheduler has terminated, and releases the threads
+     * of the scheduler.
+     * <p>
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void awaitTermination() throws InterruptedException;
+
+    /**
+     * Creates a scheduler by its name in the configuration file.
+     * <p>
+     * @param name    "platform", "virtual" or "executor" (null means "platform").
+     * @param threads The number of worker threads of the "executor" scheduler (0 or less means one per processor).
+     * @return The new scheduler.
+     */
+    static MicroServiceScheduler forName(String name, int threads) {
+        if (name == null || name.equalsIgnoreCase("platform"))
+            return new ThreadScheduler(false);
+        if (name.equalsIgnoreCase("virtual")) {
+            if (ThreadScheduler.supportsVirtualThreads())
+                return new ThreadScheduler(true);
+            System.err.println("Virtual threads are not supported by this JVM, using platform threads");
+            return new ThreadScheduler(false);
+        }
+        if (name.equalsIgnoreCase("executor"))
+            return new ExecutorScheduler(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        throw new IllegalArgumentException("Unknown scheduler: " + name);
+    }
+}
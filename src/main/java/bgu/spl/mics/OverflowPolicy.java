@@ -0,0 +1,27 @@
+package bgu.spl.mics;
+
+/**
+ * What a bounded message queue does with a message that arrives while the queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The sender waits until there is room in the queue, so a slow consumer slows its producers down.
+     * Beware of services that send to each other in a cycle with full queues - they wait for each other.
+     */
+    BLOCK,
+    /**
+     * The oldest message in the queue is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new message is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * A new {@link Broadcast} of one of the types chosen in {@link MailboxSettings} replaces the oldest queued broadcast
+     * of the same type (e.g. a late TickBroadcast replaces the oldest tick still waiting). Other messages, and
+     * broadcasts with nothing to replace, wait as in {@link #BLOCK} - broadcasts whose every copy counts, such as
+     * the termination of a service, must not be coalesced.
+     */
+    COALESCE
+}
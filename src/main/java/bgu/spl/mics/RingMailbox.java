@@ -0,0 +1,277 @@
+package bgu.spl.mics;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A message queue for many senders and a single consumer - the micro-service that owns it.
+ * Messages are kept in a fixed array used as a ring: a sender claims the next slot by advancing the tail
+ * with a CAS and writes its message there, and the consumer reads slots in order starting at the head.
+ * Nothing is allocated per message and no lock is taken; a consumer waiting for a message parks,
+ * and the sender that fills the slot it waits for unparks it.
+ * <p>
+ * Only the consumer may take messages out of the queue (poll, take, drainTo...), so only the
+ * {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#DROP_NEWEST} policies are supported.
+ */
+class RingMailbox extends AbstractQueue<Message> implements BlockingQueue<Message>, Mailbox {
+    // How long a sender waiting for room parks before checking again - the consumer does not wake senders up
+    private static final long SENDER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final AtomicReferenceArray<Message> slots;
+    private final int mask;
+    private final AtomicLong tail; // next slot to claim by a sender
+    private volatile long head;    // next slot to read by the consumer, written only by the consumer
+    private volatile Thread waiter; // the consumer, while it is parked
+    private final OverflowPolicy policy;
+    private final AtomicInteger highWaterMark;
+    private final AtomicLong dropped;
+    private volatile boolean closed;
+    private volatile Consumer<Message> dropListener;
+
+    /**
+     * @param capacity The capacity of the queue, rounded up to a power of two.
+     * @param policy   {@link OverflowPolicy#BLOCK} or {@link OverflowPolicy#DROP_NEWEST}.
+     */
+    RingMailbox(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        if (policy != OverflowPolicy.BLOCK && policy != OverflowPolicy.DROP_NEWEST)
+            throw new IllegalArgumentException(policy + " is not supported by a ring mailbox");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        tail = new AtomicLong(0);
+        head = 0;
+        this.policy = policy;
+        highWaterMark = new AtomicInteger(0);
+        dropped = new AtomicLong(0);
+        closed = false;
+        dropListener = message -> { };
+    }
+
+    @Override
+    public boolean deliver(Message message) {
+        boolean added = offer(message);
+        if (!added && policy == OverflowPolicy.BLOCK) {
+            try {
+                added = offer(message, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (added) {
+            highWaterMark.accumulateAndGet(size(), Math::max);
+        } else {
+            dropped.incrementAndGet();
+            dropListener.accept(message);
+        }
+        return added;
+    }
+
+    /**
+     * Claims slots for as many of the messages as there is room for with a single CAS, and delivers the rest one by one.
+     */
+    @Override
+    public int addBatch(Message[] messages, int from, int to) {
+        int claimed = 0;
+        long first;
+        do {
+            first = tail.get();
+            if (closed)
+                break;
+            claimed = (int) Math.max(0, Math.min(to - from, slots.length() - (first - head)));
+        } while (claimed > 0 && !tail.compareAndSet(first, first + claimed));
+        for (int i = 0; i < claimed; i++)
+            slots.set((int) (first + i) & mask, messages[from + i]);
+        if (claimed > 0) {
+            Thread consumer = waiter;
+            if (consumer != null)
+                LockSupport.unpark(consumer);
+            highWaterMark.accumulateAndGet(size(), Math::max);
+        }
+        int added = claimed;
+        for (int i = from + claimed; i < to; i++) {
+            if (deliver(messages[i]))
+                added++;
+            else
+                messages[i] = null;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean offer(Message message) {
+        if (message == null)
+            throw new NullPointerException();
+        if (closed)
+            return false;
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head >= slots.length())
+                return false;
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        slots.set((int) claimed & mask, message);
+        Thread consumer = waiter;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }
+
+    @Override
+    public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(message)) {
+            if (closed || System.nanoTime() - deadline >= 0)
+                return false;
+            LockSupport.parkNanos(this, SENDER_BACKOFF_NANOS);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(Message message) throws InterruptedException {
+        if (!offer(message, Long.MAX_VALUE, TimeUnit.NANOSECONDS))
+            throw new IllegalStateException("Mailbox is closed");
+    }
+
+    @Override
+    public Message poll() {
+        long index = head;
+        int slot = (int) index & mask;
+        Message message = slots.get(slot);
+        if (message == null) // empty, or the sender that claimed the slot has not written it yet
+            return null;
+        slots.lazySet(slot, null);
+        head = index + 1;
+        return message;
+    }
+
+    @Override
+    public Message take() throws InterruptedException {
+        return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Message message = poll();
+        if (message != null)
+            return message;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            // a sender that writes after we set waiter unparks us, a sender that wrote before is seen by poll
+            while ((message = poll()) == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return null;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return message;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    @Override
+    public Message peek() {
+        return slots.get((int) head & mask);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Message> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Message> c, int maxElements) {
+        int drained = 0;
+        Message message;
+        while (drained < maxElements && (message = poll()) != null) {
+            c.add(message);
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, slots.length()));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return slots.length() - size();
+    }
+
+    /**
+     * @return a weakly consistent, read-only iterator over the waiting messages.
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<Message>() {
+            private long index = head;
+            private final long end = tail.get();
+            private Message next = advance();
+
+            private Message advance() {
+                while (index < end) {
+                    Message message = slots.get((int) index++ & mask);
+                    if (message != null)
+                        return message;
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Message next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Message message = next;
+                next = advance();
+                return message;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public void setDropListener(Consumer<Message> listener) {
+        dropListener = listener;
+    }
+
+    @Override
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
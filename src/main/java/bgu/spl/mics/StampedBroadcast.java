@@ -0,0 +1,23 @@
+package bgu.spl.mics;
+
+/**
+ * Carries a {@link Broadcast} through the message queues of its subscribers together with the time it was sent,
+ * so the time it waited in each queue can be measured. Used only while {@link MessageBusMetrics} are enabled.
+ */
+final class StampedBroadcast implements Message {
+    private final Broadcast broadcast;
+    private final long sentNanos;
+
+    StampedBroadcast(Broadcast broadcast, long sentNanos) {
+        this.broadcast = broadcast;
+        this.sentNanos = sentNanos;
+    }
+
+    Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    long getSentNanos() {
+        return sentNanos;
+    }
+}
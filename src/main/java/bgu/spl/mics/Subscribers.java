@@ -0,0 +1,117 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The subscribers of a single message type.
+ * The subscribers are kept in an immutable array that is replaced (copy-on-write) whenever a
+ * micro-service subscribes or unregisters, so senders never take a lock - they read the current
+ * array and advance an atomic cursor to pick the next subscriber in a round-robin fashion.
+ */
+class Subscribers {
+    private static final MicroService[] EMPTY = new MicroService[0];
+
+    private final AtomicReference<MicroService[]> services;
+    private final AtomicInteger cursor;
+
+    Subscribers() {
+        services = new AtomicReference<>(EMPTY);
+        cursor = new AtomicInteger(0);
+    }
+
+    /**
+     * Adds {@code m} to the end of the round-robin order, if it is not already subscribed.
+     */
+    void add(MicroService m) {
+        MicroService[] current;
+        MicroService[] updated;
+        do {
+            current = services.get();
+            if (indexOf(current, m) >= 0)
+                return;
+            updated = new MicroService[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = m;
+        } while (!services.compareAndSet(current, updated));
+    }
+
+    /**
+     * Removes {@code m} from the round-robin order. Sends that already picked {@code m} are not affected.
+     * @return true if {@code m} was subscribed.
+     */
+    boolean remove(MicroService m) {
+        MicroService[] current;
+        MicroService[] updated;
+        do {
+            current = services.get();
+            int index = indexOf(current, m);
+            if (index < 0)
+                return false;
+            updated = new MicroService[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        } while (!services.compareAndSet(current, updated));
+        return true;
+    }
+
+    boolean contains(MicroService m) {
+        return indexOf(services.get(), m) >= 0;
+    }
+
+    boolean isEmpty() {
+        return services.get().length == 0;
+    }
+
+    int size() {
+        return services.get().length;
+    }
+
+    /**
+     * @return the current subscribers. The array is never modified and must not be modified by the caller.
+     */
+    MicroService[] snapshot() {
+        return services.get();
+    }
+
+    /**
+     * @return the subscriber whose turn it is, or null if there are no subscribers.
+     */
+    MicroService next() {
+        MicroService[] current = services.get();
+        if (current.length == 0)
+            return null;
+        return pick(current, cursor.getAndIncrement());
+    }
+
+    /**
+     * Reserves {@code n} consecutive turns, so a batch can be routed with a single atomic update.
+     * @return the first reserved ticket, to be passed to {@link #pick(MicroService[], int)}
+     *         (the following tickets are the next integers).
+     */
+    int reserve(int n) {
+        return cursor.getAndAdd(n);
+    }
+
+    /**
+     * @return the subscriber in {@code snapshot} that owns turn {@code ticket}.
+     */
+    static MicroService pick(MicroService[] snapshot, int ticket) {
+        return snapshot[turn(ticket, snapshot.length)];
+    }
+
+    /**
+     * @return the index of the subscriber that owns turn {@code ticket} among {@code subscribers} subscribers.
+     */
+    static int turn(int ticket, int subscribers) {
+        return (ticket & Integer.MAX_VALUE) % subscribers;
+    }
+
+    private static int indexOf(MicroService[] array, MicroService m) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == m)
+                return i;
+        }
+        return -1;
+    }
+}
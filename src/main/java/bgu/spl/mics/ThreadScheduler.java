@@ -0,0 +1,63 @@
+package bgu.spl.mics;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs every micro-service on a thread of its own - a platform thread, or a virtual thread when the JVM has them.
+ * Virtual threads are started through reflection, so this class still compiles and runs on Java 8.
+ */
+class ThreadScheduler implements MicroServiceScheduler {
+    private static final Method START_VIRTUAL_THREAD = findStartVirtualThread();
+
+    private final boolean virtual;
+    private final List<Thread> threads;
+
+    ThreadScheduler(boolean virtual) {
+        if (virtual && START_VIRTUAL_THREAD == null)
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM");
+        this.virtual = virtual;
+        threads = new CopyOnWriteArrayList<>();
+    }
+
+    static boolean supportsVirtualThreads() {
+        return START_VIRTUAL_THREAD != null;
+    }
+
+    @Override
+    public void start(MicroService m) {
+        Thread thread;
+        if (virtual) {
+            try {
+                thread = (Thread) START_VIRTUAL_THREAD.invoke(null, m);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not start a virtual thread", e);
+            }
+            thread.setName(m.getName());
+        } else {
+            thread = new Thread(m, m.getName());
+            thread.start();
+        }
+        threads.add(thread);
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static Method findStartVirtualThread() {
+        try {
+            Method method = Thread.class.getMethod("startVirtualThread", Runnable.class);
+            // on Java 19 and 20 virtual threads are a preview feature, and fail unless it is enabled
+            Thread probe = (Thread) method.invoke(null, (Runnable) () -> { });
+            probe.join();
+            return method;
+        } catch (ReflectiveOperationException | InterruptedException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
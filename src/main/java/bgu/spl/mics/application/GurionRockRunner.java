@@ -1,12 +1,26 @@
 package bgu.spl.mics.application;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.MailboxSettings;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessageBusMetrics;
+import bgu.spl.mics.MicroServiceScheduler;
+import bgu.spl.mics.OverflowPolicy;
 import bgu.spl.mics.application.objects.Camera;
 import bgu.spl.mics.application.objects.Config;
 import bgu.spl.mics.application.objects.FusionSlam;
 import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.LandMarkFusion;
+import bgu.spl.mics.application.objects.LiDarDataBase;
 import bgu.spl.mics.application.objects.LiDarWorkerTracker;
 import bgu.spl.mics.application.services.CameraService;
 import bgu.spl.mics.application.services.FusionSlamService;
@@ -35,6 +49,19 @@ public class GurionRockRunner {
         Config config = ConfigParser.parseConfig(configFilePath);
         String filePathLocation = Paths.get(configFilePath).getParent().toFile().getAbsolutePath() + File.separator;
         FusionSlam.getInstance().setBaseDirectory(filePathLocation);
+        FusionSlam.getInstance().setPoseRetention(poseRetention(config));
+        FusionSlam.getInstance().setParallelism(config.getFusionParallelism());
+        FusionSlam.getInstance().setFusion(LandMarkFusion.valueOf(config.getFusion().toUpperCase()), config.getFusionWindow());
+        LiDarDataBase.setWindow(lidarWindow(config));
+        if (config.getMapHotTiles() > 0) {
+            try {
+                FusionSlam.getInstance().useTiledMap(config.getMapTileSize(), config.getMapHotTiles(),
+                        config.getMapTileDirectory() == null ? Files.createTempDirectory("map-tiles")
+                                : Paths.get(config.getMapTileDirectory()));
+            } catch (IOException e) {
+                System.err.println("Could not create the map tile directory, keeping the map in memory: " + e.getMessage());
+            }
+        }
 
         // Total number of services to initialize
         int totalServices = config.getCameras().getCamerasConfigurations().size()
@@ -44,34 +71,124 @@ public class GurionRockRunner {
         // Create a CountDownLatch to synchronize initialization
         CountDownLatch latch = new CountDownLatch(totalServices);
 
+        // Bound the message queues of the services, if the configuration asks to
+        MessageBusImpl.getInstance().setMailboxSettings(new MailboxSettings(
+                MailboxSettings.Kind.valueOf(config.getMailboxType().toUpperCase()), config.getMailboxCapacity(),
+                OverflowPolicy.valueOf(config.getMailboxPolicy().toUpperCase()), config.getMailboxCapacities(),
+                broadcastTypes(config.getMailboxCoalesced())));
+
+        // Record message-bus metrics, if the configuration asks to - readable through JMX and dumped next to the output
+        MessageBusMetrics metrics = null;
+        if (config.isMetrics()) {
+            metrics = new MessageBusMetrics();
+            metrics.registerMBean();
+            metrics.startDumping(filePathLocation + "metrics.json", config.getMetricsPeriod());
+            MessageBusImpl.getInstance().setMetrics(metrics);
+        }
+
+        // The scheduler decides which threads the services run on
+        MicroServiceScheduler scheduler = MicroServiceScheduler.forName(config.getScheduler(), config.getSchedulerThreads());
+
+        // Load the sensor data files, in parallel and each once, before any service starts:
+        String cameraFilePath = filePathLocation + config.getCameras().getCamera_datas_path().substring(1);
+        List<Camera> cameras = new ArrayList<>();
+        for (Camera camera : config.getCameras().getCamerasConfigurations())
+            cameras.add(new Camera(camera.getId(), camera.getFrequency()));
+        String lidarFilePath = filePathLocation + config.getLiDarWorkers().getFilePath().substring(1);
+        String poseFilePath = filePathLocation + config.getPoseJsonFile().substring(1);
+        GPSIMU gpsimu = new GPSIMU(poseFilePath);
+        SensorDataLoader.load(cameraFilePath, cameras, lidarFilePath, gpsimu);
+
         // Make new fusionSlam service:
         FusionSlamService newFusionSlamService = new FusionSlamService(FusionSlam.getInstance(), latch);
-        new Thread(newFusionSlamService).start();
+        scheduler.start(newFusionSlamService);
 
         // Make new camera services:
-        String cameraFilePath = filePathLocation + config.getCameras().getCamera_datas_path().substring(1);
-        for (Camera camera : config.getCameras().getCamerasConfigurations()){
-            Camera newCamera = new Camera(camera.getId(), camera.getFrequency());
+        for (Camera newCamera : cameras){
             CameraService newCameraService = new CameraService(newCamera, latch);
             newCameraService.setFilePath(cameraFilePath);
             addCounter();
-            new Thread(newCameraService).start();
+            scheduler.start(newCameraService);
         }
         // Make new lidar services:
-        String lidarFilePath = filePathLocation + config.getLiDarWorkers().getFilePath().substring(1);
         for (LiDarWorkerTracker lidar : config.getLiDarWorkers().getLidarConfigurations()){
             LiDarWorkerTracker newLidar = new LiDarWorkerTracker(lidar.getId(), lidar.getFrequency(), lidarFilePath);
             LiDarService newLidarService = new LiDarService(newLidar, latch);
             addCounter();
-            new Thread(newLidarService).start();
+            scheduler.start(newLidarService);
 
         }
         // Make new pose service:
-        String poseFilePath = filePathLocation + config.getPoseJsonFile().substring(1);
-        PoseService newPoseService = new PoseService(new GPSIMU(poseFilePath), latch);
-        new Thread(newPoseService).start();
-        // Make new time service:
+        PoseService newPoseService = new PoseService(gpsimu, latch);
+        scheduler.start(newPoseService);
+        // Make new time service - it sleeps between ticks, so it always gets a thread of its own:
         TimeService newTimeService = new TimeService(config.getTickTime(), config.getDuration(), latch);
         new Thread(newTimeService).start();
+        try {
+            scheduler.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (metrics != null)
+            metrics.stopDumping();
+    }
+
+    /**
+     * @return the pose retention of the configuration, raised if needed to cover the time a tracked object takes to
+     * reach FusionSlam - up to a camera frequency and then a LiDAR frequency after the time of its pose.
+     */
+    private static int poseRetention(Config config) {
+        int retention = config.getPoseRetention();
+        if (retention <= 0)
+            return retention;
+        int maxCameraFrequency = maxCameraFrequency(config);
+        int maxLidarFrequency = 0;
+        for (LiDarWorkerTracker lidar : config.getLiDarWorkers().getLidarConfigurations())
+            maxLidarFrequency = Math.max(maxLidarFrequency, lidar.getFrequency());
+        int minimum = maxCameraFrequency + maxLidarFrequency + 1;
+        if (retention < minimum) {
+            System.err.println("PoseRetention " + retention + " is shorter than tracked objects take to arrive, using " + minimum);
+            return minimum;
+        }
+        return retention;
+    }
+
+    /**
+     * @return the LiDAR window of the configuration, raised if needed to the largest camera frequency - the LiDAR
+     * workers ask for detection times that lag each other by up to a camera frequency, and the frames in that lag
+     * must still be in memory.
+     */
+    private static int lidarWindow(Config config) {
+        int window = config.getLidarWindow();
+        if (window <= 0)
+            return window;
+        int minimum = maxCameraFrequency(config);
+        if (window < minimum) {
+            System.err.println("LidarWindow " + window + " is shorter than the largest camera frequency, using " + minimum);
+            return minimum;
+        }
+        return window;
+    }
+
+    private static int maxCameraFrequency(Config config) {
+        int maxCameraFrequency = 0;
+        for (Camera camera : config.getCameras().getCamerasConfigurations())
+            maxCameraFrequency = Math.max(maxCameraFrequency, camera.getFrequency());
+        return maxCameraFrequency;
+    }
+
+    /**
+     * @return the broadcast classes named in {@code names}, in the package of the application's messages.
+     */
+    private static Set<Class<? extends Broadcast>> broadcastTypes(List<String> names) {
+        Set<Class<? extends Broadcast>> types = new HashSet<>();
+        for (String name : names) {
+            try {
+                types.add(Class.forName("bgu.spl.mics.application.messages." + name).asSubclass(Broadcast.class));
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IllegalArgumentException("Unknown broadcast: " + name, e);
+            }
+        }
+        return types;
     }
 }
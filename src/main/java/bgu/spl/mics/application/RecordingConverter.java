@@ -0,0 +1,57 @@
+package bgu.spl.mics.application;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import bgu.spl.mics.application.objects.BinaryRecording;
+import bgu.spl.mics.application.objects.Config;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Converts the recordings of a configuration (camera detections, LiDAR frames and poses) to
+ * {@link BinaryRecording}s, written next to the JSON files. The next runs of the simulation read the binary files,
+ * as long as they are newer than the JSON files.
+ */
+public class RecordingConverter {
+
+    /**
+     * @param args The path to the configuration file.
+     */
+    public static void main(String[] args) throws IOException {
+        String configFilePath = args[0];
+        Config config = ConfigParser.parseConfig(configFilePath);
+        String filePathLocation = Paths.get(configFilePath).getParent().toFile().getAbsolutePath() + File.separator;
+        Gson gson = new Gson();
+
+        String cameraFilePath = filePathLocation + config.getCameras().getCamera_datas_path().substring(1);
+        Map<String, List<StampedDetectedObjects>> cameras = read(gson, cameraFilePath,
+                new TypeToken<Map<String, List<StampedDetectedObjects>>>() {}.getType());
+        BinaryRecording.writeCameras(cameras, BinaryRecording.binaryPathOf(cameraFilePath));
+
+        String lidarFilePath = filePathLocation + config.getLiDarWorkers().getFilePath().substring(1);
+        List<StampedCloudPoints> frames = read(gson, lidarFilePath, new TypeToken<List<StampedCloudPoints>>() {}.getType());
+        BinaryRecording.writeLidar(frames, BinaryRecording.binaryPathOf(lidarFilePath));
+
+        String poseFilePath = filePathLocation + config.getPoseJsonFile().substring(1);
+        List<Pose> poses = read(gson, poseFilePath, new TypeToken<List<Pose>>() {}.getType());
+        BinaryRecording.writePoses(poses, BinaryRecording.binaryPathOf(poseFilePath));
+
+        System.out.println("Converted " + cameras.size() + " cameras, " + frames.size() + " LiDAR frames and "
+                + poses.size() + " poses");
+    }
+
+    private static <T> T read(Gson gson, String filePath, Type type) throws IOException {
+        try (FileReader reader = new FileReader(filePath)) {
+            return gson.fromJson(reader, type);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package bgu.spl.mics.application;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.objects.GPSIMU;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+
+/**
+ * Loads the sensor data files at startup, before the services are started: the camera file, the LiDAR file and the
+ * pose file are read in parallel, each exactly once, and each camera is given its own detections.
+ * <p>
+ * A camera or GPSIMU whose file could not be read here is left unloaded (see {@link Camera#isLoaded()} and
+ * {@link GPSIMU#isLoaded()}), and its service tries to load it again on its own when it initializes, as it would
+ * without this stage.
+ */
+public class SensorDataLoader {
+
+    /**
+     * Loads the data of {@code cameras}, of the LiDAR database and of {@code gpsimu}, and returns once all of it is
+     * loaded.
+     */
+    public static void load(String cameraFilePath, List<Camera> cameras, String lidarFilePath, GPSIMU gpsimu) {
+        List<Callable<Void>> loads = Arrays.asList(
+                () -> {
+                    Map<String, List<StampedDetectedObjects>> cameraData = Camera.readCameraData(cameraFilePath);
+                    if (cameraData == null) // left for the camera services
+                        return null;
+                    for (Camera camera : cameras)
+                        camera.loadStampedObjects(cameraData.getOrDefault(camera.getCamera_key(), Collections.emptyList()));
+                    return null;
+                },
+                () -> {
+                    LiDarDataBase.getInstance(lidarFilePath);
+                    return null;
+                },
+                () -> {
+                    gpsimu.loadPoseData();
+                    return null;
+                });
+        ExecutorService loaders = Executors.newFixedThreadPool(loads.size(), runnable -> {
+            Thread thread = new Thread(runnable, "sensor-data-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Future<Void> loaded : loaders.invokeAll(loads)) {
+                try {
+                    loaded.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            loaders.shutdown();
+        }
+    }
+}
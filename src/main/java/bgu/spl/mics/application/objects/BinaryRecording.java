@@ -0,0 +1,343 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sensor recording (LiDAR frames, camera detections or poses) in a compact columnar binary format, read through a
+ * {@link MappedByteBuffer}: opening a recording maps the file and decodes its table of strings, and every value is
+ * then read in place, when asked for - nothing is parsed up front.
+ * <p>
+ * The format, big-endian: a header (magic, version, kind, flags); a table of the distinct strings (ids,
+ * descriptions, camera keys), which the records refer to by number; then the records, column after column, with
+ * fixed-width times and references and packed coordinates:
+ * <ul>
+ *     <li>poses: n, time[n], x[n], y[n], yaw[n] (floats)</li>
+ *     <li>LiDAR frames: n, time[n], id[n], firstPoint[n + 1], p, x[p], y[p] (floats, or doubles if
+ *     {@link #DOUBLE_COORDINATES}) - the x and y of each point only</li>
+ *     <li>camera detections: c, (key, firstStamp, stamps)[c], s, time[s], firstObject[s + 1], o, id[o],
+ *     description[o]</li>
+ * </ul>
+ * Coordinates are written as floats only when every one of them is exactly a float, and as doubles otherwise, so a
+ * recording read from either file gives the same numbers - and reading one takes no conversion.
+ * <p>
+ * {@code RecordingConverter} writes the binary file of a recording next to its JSON file, with the extension
+ * {@code .bin}; {@link #openFor(String)} finds it there.
+ */
+public class BinaryRecording {
+    public enum Kind { POSES, LIDAR, CAMERAS }
+
+    private static final int MAGIC = 0x47524252; // "GRBR"
+    private static final short VERSION = 2; // 1 wrote floats that only rounded to the coordinates
+    static final byte DOUBLE_COORDINATES = 1;
+
+    private final Kind kind;
+    private final MappedByteBuffer buffer;
+    private final String[] strings;
+    private final int count; // records (poses, frames or stamps)
+    private final int[] columns; // the offsets of the columns of the records
+    private final boolean doubles;
+    private final Map<String, int[]> cameras; // key -> {firstStamp, stamps}
+
+    private BinaryRecording(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+            throw new IOException("Not a binary recording of this version");
+        kind = Kind.values()[buffer.get()];
+        doubles = (buffer.get() & DOUBLE_COORDINATES) != 0;
+        strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        cameras = new LinkedHashMap<>();
+        if (kind == Kind.CAMERAS) {
+            int cameraCount = buffer.getInt();
+            for (int c = 0; c < cameraCount; c++)
+                cameras.put(strings[buffer.getInt()], new int[]{buffer.getInt(), buffer.getInt()});
+        }
+        count = buffer.getInt();
+        switch (kind) {
+            case POSES: // time, x, y, yaw
+                columns = new int[]{buffer.position(), buffer.position() + 4 * count,
+                        buffer.position() + 8 * count, buffer.position() + 12 * count};
+                break;
+            case LIDAR: { // time, id, firstPoint, x, y
+                int time = buffer.position();
+                int firstPoint = time + 8 * count;
+                int points = buffer.getInt(firstPoint + 4 * (count + 1));
+                int x = firstPoint + 4 * (count + 1) + 4;
+                columns = new int[]{time, time + 4 * count, firstPoint, x, x + (doubles ? 8 : 4) * points};
+                break;
+            }
+            default: { // time, firstObject, id, description
+                int time = buffer.position();
+                int firstObject = time + 4 * count;
+                int objects = buffer.getInt(firstObject + 4 * (count + 1));
+                int id = firstObject + 4 * (count + 1) + 4;
+                columns = new int[]{time, firstObject, id, id + 4 * objects};
+            }
+        }
+    }
+
+    /**
+     * Maps the binary recording at {@code path}.
+     */
+    public static BinaryRecording open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryRecording(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the binary recording converted from the JSON file at {@code jsonPath}, or null if there is none,
+     * it is older than the JSON file, or it cannot be read.
+     */
+    public static BinaryRecording openFor(String jsonPath) {
+        Path binary = binaryPathOf(jsonPath);
+        File json = new File(jsonPath);
+        if (!Files.isRegularFile(binary) || (json.exists() && binary.toFile().lastModified() < json.lastModified()))
+            return null;
+        try {
+            return open(binary);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring the binary recording " + binary + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return where the binary form of the JSON recording at {@code jsonPath} is kept.
+     */
+    public static Path binaryPathOf(String jsonPath) {
+        String name = jsonPath.endsWith(".json") ? jsonPath.substring(0, jsonPath.length() - 5) : jsonPath;
+        return Paths.get(name + ".bin");
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the number of poses, frames or stamps (of all the cameras together).
+     */
+    public int size() {
+        return count;
+    }
+
+    public Pose getPose(int index) {
+        return new Pose(buffer.getInt(columns[0] + 4 * index), buffer.getFloat(columns[1] + 4 * index),
+                buffer.getFloat(columns[2] + 4 * index), buffer.getFloat(columns[3] + 4 * index));
+    }
+
+    public int getFrameTime(int index) {
+        return buffer.getInt(columns[0] + 4 * index);
+    }
+
+    public String getFrameId(int index) {
+        return strings[buffer.getInt(columns[1] + 4 * index)];
+    }
+
+    /**
+     * @return the x and y of the points of frame {@code index}.
+     */
+    public PointCloud getFramePoints(int index) {
+        int from = buffer.getInt(columns[2] + 4 * index);
+        int to = buffer.getInt(columns[2] + 4 * (index + 1));
+        PointCloud points = new PointCloud(to - from);
+        for (int p = from; p < to; p++) {
+            if (doubles)
+                points.add(buffer.getDouble(columns[3] + 8 * p), buffer.getDouble(columns[4] + 8 * p));
+            else
+                points.add(buffer.getFloat(columns[3] + 4 * p), buffer.getFloat(columns[4] + 4 * p));
+        }
+        return points;
+    }
+
+    public StampedCloudPoints getFrame(int index) {
+        return new StampedCloudPoints(getFrameId(index), getFrameTime(index), getFramePoints(index));
+    }
+
+    /**
+     * @return the detections of the camera with key {@code cameraKey}, in the order of the recording
+     * (empty if the recording has no such camera). Only the detections of that camera are read.
+     */
+    public List<StampedDetectedObjects> getStamps(String cameraKey) {
+        int[] range = cameras.get(cameraKey);
+        List<StampedDetectedObjects> stamps = new ArrayList<>(range == null ? 0 : range[1]);
+        if (range == null)
+            return stamps;
+        for (int s = range[0]; s < range[0] + range[1]; s++) {
+            int from = buffer.getInt(columns[1] + 4 * s);
+            int to = buffer.getInt(columns[1] + 4 * (s + 1));
+            List<DetectedObject> objects = new ArrayList<>(to - from);
+            for (int o = from; o < to; o++)
+                objects.add(new DetectedObject(strings[buffer.getInt(columns[2] + 4 * o)], strings[buffer.getInt(columns[3] + 4 * o)]));
+            stamps.add(new StampedDetectedObjects(buffer.getInt(columns[0] + 4 * s), objects));
+        }
+        return stamps;
+    }
+
+    /**
+     * @return the keys of the cameras of the recording, in its order.
+     */
+    public List<String> getCameraKeys() {
+        return new ArrayList<>(cameras.keySet());
+    }
+
+    /**
+     * @return whether {@code value} is exactly a float - which decimals such as 0.1 are not.
+     */
+    private static boolean fitsFloat(double value) {
+        return (float) value == value;
+    }
+
+    public static void writePoses(List<Pose> poses, Path path) throws IOException {
+        try (DataOutputStream out = create(path, Kind.POSES, (byte) 0, new Strings())) {
+            out.writeInt(poses.size());
+            for (Pose pose : poses)
+                out.writeInt(pose.getTime());
+            for (Pose pose : poses)
+                out.writeFloat(pose.getX());
+            for (Pose pose : poses)
+                out.writeFloat(pose.getY());
+            for (Pose pose : poses)
+                out.writeFloat(pose.getYaw());
+        }
+    }
+
+    public static void writeLidar(List<StampedCloudPoints> frames, Path path) throws IOException {
+        Strings strings = new Strings();
+        boolean floats = true;
+        int points = 0;
+        for (StampedCloudPoints frame : frames) {
+            strings.add(frame.getId());
+            PointCloud cloud = frame.getPoints();
+            for (int p = 0; p < cloud.size(); p++)
+                floats &= fitsFloat(cloud.getX(p)) && fitsFloat(cloud.getY(p));
+            points += cloud.size();
+        }
+        try (DataOutputStream out = create(path, Kind.LIDAR, floats ? 0 : DOUBLE_COORDINATES, strings)) {
+            out.writeInt(frames.size());
+            for (StampedCloudPoints frame : frames)
+                out.writeInt(frame.getTime());
+            for (StampedCloudPoints frame : frames)
+                out.writeInt(strings.get(frame.getId()));
+            int firstPoint = 0;
+            for (StampedCloudPoints frame : frames) {
+                out.writeInt(firstPoint);
+                firstPoint += frame.getPoints().size();
+            }
+            out.writeInt(firstPoint);
+            out.writeInt(points);
+            for (int axis = 0; axis < 2; axis++) {
+                for (StampedCloudPoints frame : frames) {
+                    PointCloud cloud = frame.getPoints();
+                    for (int p = 0; p < cloud.size(); p++) {
+                        double value = axis == 0 ? cloud.getX(p) : cloud.getY(p);
+                        if (floats)
+                            out.writeFloat((float) value);
+                        else
+                            out.writeDouble(value);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void writeCameras(Map<String, List<StampedDetectedObjects>> cameras, Path path) throws IOException {
+        Strings strings = new Strings();
+        int stampCount = 0;
+        int objectCount = 0;
+        for (Map.Entry<String, List<StampedDetectedObjects>> camera : cameras.entrySet()) {
+            strings.add(camera.getKey());
+            for (StampedDetectedObjects stamp : camera.getValue()) {
+                for (DetectedObject object : stamp.getDetectedObjects()) {
+                    strings.add(object.getId());
+                    strings.add(object.getDescription());
+                }
+                objectCount += stamp.getDetectedObjects().size();
+            }
+            stampCount += camera.getValue().size();
+        }
+        try (DataOutputStream out = create(path, Kind.CAMERAS, (byte) 0, strings)) {
+            out.writeInt(cameras.size());
+            int firstStamp = 0;
+            for (Map.Entry<String, List<StampedDetectedObjects>> camera : cameras.entrySet()) {
+                out.writeInt(strings.get(camera.getKey()));
+                out.writeInt(firstStamp);
+                out.writeInt(camera.getValue().size());
+                firstStamp += camera.getValue().size();
+            }
+            out.writeInt(stampCount);
+            for (List<StampedDetectedObjects> stamps : cameras.values()) {
+                for (StampedDetectedObjects stamp : stamps)
+                    out.writeInt(stamp.getTime());
+            }
+            int firstObject = 0;
+            for (List<StampedDetectedObjects> stamps : cameras.values()) {
+                for (StampedDetectedObjects stamp : stamps) {
+                    out.writeInt(firstObject);
+                    firstObject += stamp.getDetectedObjects().size();
+                }
+            }
+            out.writeInt(firstObject);
+            out.writeInt(objectCount);
+            for (int column = 0; column < 2; column++) {
+                for (List<StampedDetectedObjects> stamps : cameras.values()) {
+                    for (StampedDetectedObjects stamp : stamps) {
+                        for (DetectedObject object : stamp.getDetectedObjects())
+                            out.writeInt(strings.get(column == 0 ? object.getId() : object.getDescription()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens {@code path} for writing and writes the header and the table of strings.
+     */
+    private static DataOutputStream create(Path path, Kind kind, byte flags, Strings strings) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(kind.ordinal());
+        out.writeByte(flags);
+        out.writeInt(strings.numbers.size());
+        for (String string : strings.numbers.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        return out;
+    }
+
+    /**
+     * The distinct strings of a recording, numbered in the order they were first added.
+     */
+    private static class Strings {
+        final Map<String, Integer> numbers = new LinkedHashMap<>();
+
+        void add(String string) {
+            numbers.putIfAbsent(string, numbers.size());
+        }
+
+        int get(String string) {
+            return numbers.get(string);
+        }
+    }
+}
@@ -7,6 +7,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,7 +24,9 @@ public class Camera {
     private String camera_key;
     private STATUS status;
     private List<StampedDetectedObjects> detectedObjectList ;
+    private Map<Integer, StampedDetectedObjects> detectedByTime; // time -> the first detections at that time
     private int maxTime;
+    private boolean loaded;
 
     public Camera(int id, int frequency) {
         this.id = id;
@@ -29,6 +34,7 @@ public class Camera {
         camera_key = "camera"+id;
         status = STATUS.UP;
         detectedObjectList = new ArrayList<>();
+        detectedByTime = new HashMap<>();
         maxTime = 0;
     }
 
@@ -59,29 +65,77 @@ public class Camera {
         this.status = status;
     }
 
+    /**
+     * @return the first detections of this camera at {@code time}, or null if it has none, in constant time.
+     */
+    public StampedDetectedObjects getDetectedObjects(int time) {
+        return detectedByTime.get(time);
+    }
+
     public void addStampedObject (StampedDetectedObjects object){
         detectedObjectList.add(object);
+        detectedByTime.putIfAbsent(object.getTime(), object);
     }
 
+    /**
+     * Loads the detections of this camera, from the binary form of the file if it was converted
+     * (see {@link BinaryRecording}), reading only the detections of this camera.
+     * If the file cannot be read, the camera is left unloaded.
+     */
     public void loadCameraData(String filePath) {
+        BinaryRecording binary = BinaryRecording.openFor(filePath);
+        if (binary != null && binary.getKind() == BinaryRecording.Kind.CAMERAS) {
+            loadStampedObjects(binary.getStamps(camera_key));
+            return;
+        }
+        Map<String, List<StampedDetectedObjects>> cameraData = readCameraData(filePath);
+        if (cameraData != null)
+            loadStampedObjects(cameraData.getOrDefault(camera_key, Collections.emptyList()));
+    }
+
+    /**
+     * Reads the detections of all the cameras, from the binary form of the file if it was converted - for loading
+     * the file once and giving each camera its own detections (see {@link #loadStampedObjects(List)}).
+     * @return camera key -> the detections of the camera, in the order of the file; null if the file cannot be read.
+     */
+    public static Map<String, List<StampedDetectedObjects>> readCameraData(String filePath) {
+        Map<String, List<StampedDetectedObjects>> cameraData = new LinkedHashMap<>();
+        BinaryRecording binary = BinaryRecording.openFor(filePath);
+        if (binary != null && binary.getKind() == BinaryRecording.Kind.CAMERAS) {
+            for (String cameraKey : binary.getCameraKeys())
+                cameraData.put(cameraKey, binary.getStamps(cameraKey));
+            return cameraData;
+        }
         Gson gson = new Gson();
         try (FileReader reader = new FileReader(filePath)) {
             Type cameraDataType = new TypeToken<Map<String, List<StampedDetectedObjects>>>() {}.getType();
-            Map<String, List<StampedDetectedObjects>> cameraData = gson.fromJson(reader, cameraDataType);
-            for (Map.Entry<String, List<StampedDetectedObjects>> entry : cameraData.entrySet()){
-                String cameraId = entry.getKey();
-                if (cameraId.equals("camera"+id)){
-                    List<StampedDetectedObjects> stampedObjects = entry.getValue();
-                    for (StampedDetectedObjects stampedObj : stampedObjects) {
-                        if(maxTime < stampedObj.getTime() + frequency){
-                            maxTime = stampedObj.getTime() + frequency;
-                        }
-                        detectedObjectList.add(stampedObj);
-                    }
-                }
-            }
+            Map<String, List<StampedDetectedObjects>> parsed = gson.fromJson(reader, cameraDataType);
+            if (parsed != null)
+                cameraData.putAll(parsed);
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
+        return cameraData;
+    }
+
+    /**
+     * Adds the detections of this camera, read from its file, and marks its data as loaded.
+     */
+    public void loadStampedObjects(List<StampedDetectedObjects> stampedObjects) {
+        for (StampedDetectedObjects stampedObj : stampedObjects) {
+            if(maxTime < stampedObj.getTime() + frequency){
+                maxTime = stampedObj.getTime() + frequency;
+            }
+            addStampedObject(stampedObj);
+        }
+        loaded = true;
+    }
+
+    /**
+     * @return whether the detections of this camera were loaded from its file.
+     */
+    public boolean isLoaded() {
+        return loaded;
     }
 }
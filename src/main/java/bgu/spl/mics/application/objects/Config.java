@@ -5,7 +5,9 @@ import com.google.gson.Gson;
 import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class Config {
     private Cameras Cameras;
@@ -13,6 +15,23 @@ public class Config {
     private String poseJsonFile;
     private int TickTime;
     private int Duration;
+    private String Scheduler;
+    private int SchedulerThreads;
+    private String MailboxType;
+    private int MailboxCapacity;
+    private String MailboxPolicy;
+    private Map<String, Integer> MailboxCapacities;
+    private List<String> MailboxCoalesced;
+    private boolean Metrics;
+    private int MetricsPeriod;
+    private int PoseRetention;
+    private int FusionParallelism;
+    private String Fusion;
+    private int FusionWindow;
+    private int MapHotTiles;
+    private double MapTileSize;
+    private String MapTileDirectory;
+    private int LidarWindow;
 
     public int getDuration() {
         return Duration;
@@ -33,6 +52,132 @@ public class Config {
     public LiDarWorkers getLiDarWorkers() {
         return LiDarWorkers;
     }
+
+    /**
+     * @return "platform", "virtual" or "executor" - see {@link bgu.spl.mics.MicroServiceScheduler}.
+     * Defaults to "platform" when the configuration file does not choose one.
+     */
+    public String getScheduler() {
+        return Scheduler == null ? "platform" : Scheduler;
+    }
+
+    /**
+     * @return the number of worker threads of the "executor" scheduler (0 means one per processor).
+     */
+    public int getSchedulerThreads() {
+        return SchedulerThreads;
+    }
+
+    /**
+     * @return the name of the {@link bgu.spl.mics.MailboxSettings.Kind} of the message queues ("LINKED" by default).
+     */
+    public String getMailboxType() {
+        return MailboxType == null ? "LINKED" : MailboxType;
+    }
+
+    /**
+     * @return the capacity of the message queue of every service (0, the default, means unbounded -
+     * or {@link bgu.spl.mics.MailboxSettings#DEFAULT_RING_CAPACITY} for ring queues).
+     */
+    public int getMailboxCapacity() {
+        return MailboxCapacity;
+    }
+
+    /**
+     * @return the name of the {@link bgu.spl.mics.OverflowPolicy} of full message queues ("BLOCK" by default).
+     */
+    public String getMailboxPolicy() {
+        return MailboxPolicy == null ? "BLOCK" : MailboxPolicy;
+    }
+
+    /**
+     * @return capacities of the message queues of specific services by service name (e.g. "FusionSlam"), may be null.
+     */
+    public Map<String, Integer> getMailboxCapacities() {
+        return MailboxCapacities;
+    }
+
+    /**
+     * @return the names of the broadcasts (in bgu.spl.mics.application.messages) that the COALESCE policy coalesces
+     * (["TickBroadcast"] by default).
+     */
+    public List<String> getMailboxCoalesced() {
+        return MailboxCoalesced == null ? Collections.singletonList("TickBroadcast") : MailboxCoalesced;
+    }
+
+    /**
+     * @return true if {@link bgu.spl.mics.MessageBusMetrics} should be recorded (false by default).
+     */
+    public boolean isMetrics() {
+        return Metrics;
+    }
+
+    /**
+     * @return the period of the metrics dump in milliseconds (1000 by default).
+     */
+    public int getMetricsPeriod() {
+        return MetricsPeriod <= 0 ? 1000 : MetricsPeriod;
+    }
+
+    /**
+     * @return the number of ticks FusionSlam keeps poses for, see {@link FusionSlam#setPoseRetention(int)}
+     * (0, the default, keeps all poses).
+     */
+    public int getPoseRetention() {
+        return PoseRetention;
+    }
+
+    /**
+     * @return the number of threads FusionSlam fuses tracked objects on, see {@link FusionSlam#setParallelism(int)}
+     * (0, the default, fuses on the FusionSlam service thread).
+     */
+    public int getFusionParallelism() {
+        return FusionParallelism;
+    }
+
+    /**
+     * @return the name of the {@link LandMarkFusion} FusionSlam merges observations with ("HALVING" by default).
+     */
+    public String getFusion() {
+        return Fusion == null ? "HALVING" : Fusion;
+    }
+
+    /**
+     * @return the number of last observations the "WINDOWED_MEAN" fusion averages (8 by default).
+     */
+    public int getFusionWindow() {
+        return FusionWindow <= 0 ? 8 : FusionWindow;
+    }
+
+    /**
+     * @return the number of map tiles kept in memory, see {@link TiledLandMarkStore}
+     * (0, the default, keeps the whole map in memory, untiled).
+     */
+    public int getMapHotTiles() {
+        return MapHotTiles;
+    }
+
+    /**
+     * @return the side of a map tile (50 by default).
+     */
+    public double getMapTileSize() {
+        return MapTileSize <= 0 ? 50 : MapTileSize;
+    }
+
+    /**
+     * @return the directory evicted map tiles are written to, or null for a new temporary directory.
+     */
+    public String getMapTileDirectory() {
+        return MapTileDirectory;
+    }
+
+    /**
+     * @return the number of ticks LiDarDataBase reads ahead of, and keeps behind, the times asked for,
+     * see {@link LiDarDataBase#setWindow(int)} (0, the default, reads the whole file at startup).
+     */
+    public int getLidarWindow() {
+        return LidarWindow;
+    }
 }
 
 
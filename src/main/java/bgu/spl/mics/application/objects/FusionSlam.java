@@ -2,8 +2,13 @@ package bgu.spl.mics.application.objects;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -17,20 +22,28 @@ public class FusionSlam {
     private static class FusionSlamHolder {
         private static FusionSlam instance = new FusionSlam();
     }
-    private List<LandMark> landmarks;
-    private List<Pose> poses;
+    private static final int PARALLEL_THRESHOLD = 64; // fewer ready objects are fused faster on the calling thread
+    private static final int GROUPS_PER_TASK = 8;
+    private LandMarkStore landmarks; // insertion order for the output file, indexed by id for matching
+    private PoseStore poses; // indexed by time
+    private int poseRetention; // in ticks, 0 keeps all poses
     private boolean isRunning;
-    private List<TrackedObject> awaitingProcess;
+    private PendingObjects awaitingProcess; // bucketed by the time of the pose they need
     private String baseDirectory;
+    private ForkJoinPool fusionPool; // null fuses on the calling thread
+    private LandMarkFusion fusion = LandMarkFusion.HALVING;
+    private int fusionWindow;
+    private volatile MapSnapshot snapshot = MapSnapshot.EMPTY;
     protected final StatisticalFolder statisticalFolder;
 
 
     private FusionSlam(){
-        landmarks = new ArrayList<>();
-        poses = new ArrayList<>();
+        landmarks = new LandMarkIndex();
+        poses = new PoseStore();
+        poseRetention = 0;
         isRunning = true;
         statisticalFolder = StatisticalFolder.getInstance();
-        awaitingProcess = new ArrayList<>();
+        awaitingProcess = new PendingObjects(poses);
         baseDirectory = "";
     }
 
@@ -42,18 +55,110 @@ public class FusionSlam {
         return FusionSlamHolder.instance;
     }
 
-    public List<LandMark> getLandmarks() {
+    /**
+     * @return the landmarks themselves - to be used by the fusion thread only. Other threads read {@link #getSnapshot()}.
+     */
+    public LandMarkStore getLandmarks() {
         return landmarks;
     }
 
-    public List<Pose> getPoses() {
+    /**
+     * Keeps the landmarks in a {@link TiledLandMarkStore} instead of on the heap - for maps too large for memory.
+     * Snapshots then carry no landmarks, since copying the map would defeat the purpose.
+     * @param tileSize  the side of a tile.
+     * @param hotTiles  the number of tiles kept in memory.
+     * @param directory where evicted tiles are written.
+     */
+    public void useTiledMap(double tileSize, int hotTiles, Path directory) throws IOException {
+        if (!landmarks.isEmpty())
+            throw new IllegalStateException("The map must be empty to be tiled");
+        landmarks = new TiledLandMarkStore(tileSize, hotTiles, directory);
+    }
+
+    /**
+     * Keeps the landmarks on the heap again, as by default. Removes the current landmarks.
+     */
+    public void useHeapMap() {
+        landmarks.clear();
+        landmarks = new LandMarkIndex();
+    }
+
+    /**
+     * @return the map as it was after the last {@link #process()} (or {@link #publishSnapshot()}).
+     * Safe to call from any thread, and never blocks.
+     */
+    public MapSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes the current map to {@link #getSnapshot()} readers. Called by the fusion thread.
+     */
+    public void publishSnapshot() {
+        if (landmarks instanceof LandMarkIndex)
+            snapshot = MapSnapshot.next(snapshot, (LandMarkIndex) landmarks, poses.getNewestTime(), awaitingProcess.size());
+        else
+            snapshot = MapSnapshot.withoutLandmarks(snapshot, poses.getNewestTime(), awaitingProcess.size());
+    }
+
+    public PoseStore getPoses() {
         return poses;
     }
 
-    public List<TrackedObject> getAwaitingProcess() {
+    /**
+     * @param parallelism the number of threads {@link #process()} fuses large batches of tracked objects on.
+     *                    0 or 1 fuses on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (fusionPool != null)
+            fusionPool.shutdown();
+        fusionPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * @param fusion how new observations of a landmark are merged into its coordinates.
+     * @param window the number of last observations {@link LandMarkFusion#WINDOWED_MEAN} averages; ignored otherwise.
+     */
+    public void setFusion(LandMarkFusion fusion, int window) {
+        if (fusion == LandMarkFusion.WINDOWED_MEAN && window <= 0)
+            throw new IllegalArgumentException("The fusion window must be positive: " + window);
+        this.fusion = fusion;
+        this.fusionWindow = fusion == LandMarkFusion.WINDOWED_MEAN ? window : 0;
+    }
+
+    /**
+     * @param poseRetention the number of ticks, back from the newest pose, to keep poses for
+     *                      (poses still needed by awaiting tracked objects are always kept). 0 keeps all poses.
+     *                      A tracked object that arrives after its pose was dropped is skipped (see
+     *                      {@link #addTrackedObjects(List)}), so it must cover the time tracked objects take to arrive.
+     */
+    public void setPoseRetention(int poseRetention) {
+        this.poseRetention = poseRetention;
+    }
+
+    public PendingObjects getAwaitingProcess() {
         return awaitingProcess;
     }
 
+    /**
+     * Adds tracked objects to wait for {@link #process()}. An object whose pose was already dropped (see
+     * {@link #setPoseRetention(int)}) could never be processed: it is reported and skipped instead of waiting forever.
+     * @return the number of objects skipped.
+     */
+    public int addTrackedObjects(List<TrackedObject> trackedObjects) {
+        int skipped = 0;
+        for (TrackedObject trackedObject : trackedObjects) {
+            if (poses.wasDropped(trackedObject.getTime())) {
+                System.err.println("Skipping tracked object " + trackedObject.getId() + ": its pose at "
+                        + trackedObject.getTime() + " was already dropped, the pose retention is too short");
+                skipped++;
+            } else {
+                awaitingProcess.add(trackedObject);
+            }
+        }
+        return skipped;
+    }
+
     public boolean isRunning() {
         return isRunning;
     }
@@ -67,6 +172,7 @@ public class FusionSlam {
             throw new IllegalArgumentException("Invalid pose: " + pose);
         }
         poses.add(pose);
+        awaitingProcess.poseArrived(pose.getTime());
     }
     public void addLandMark(LandMark landMark){
         landmarks.add(landMark);
@@ -79,12 +185,21 @@ public class FusionSlam {
      * @return The matching landmark, or null if no match is found.
      */
     public LandMark findMatchingLandMark(TrackedObject trackedObject) {
-        for (LandMark landMark : landmarks) {
-            if (trackedObject.getId().equals(landMark.getId())) {
-                return landMark;
-            }
-        }
-        return null;
+        return landmarks.findById(trackedObject.getId());
+    }
+
+    /**
+     * @return the landmarks with a point within {@code radius} of the position of {@code pose}, nearest first.
+     */
+    public List<LandMark> findLandMarksNear(Pose pose, double radius) {
+        return landmarks.findWithin(pose.getX(), pose.getY(), radius);
+    }
+
+    /**
+     * @return the {@code k} landmarks nearest to the position of {@code pose}, nearest first.
+     */
+    public List<LandMark> findNearestLandMarks(Pose pose, int k) {
+        return landmarks.findNearest(pose.getX(), pose.getY(), k);
     }
 
     /**
@@ -94,34 +209,46 @@ public class FusionSlam {
      * @param cloudpoints The cloud points of the tracked object providing the new coordinates.
      */
     public void updateLandMarkCoordinates(LandMark landMark, List<CloudPoint> cloudpoints) {
-        // Ensure landMarkCoordinates has enough capacity
-        while (landMark.getCoordinates().size() < cloudpoints.size()) {
-            landMark.addCoordinates(null); // Add placeholder values
-        }
+        updateLandMarkCoordinates(landMark, cloudpoints instanceof PointCloud ? (PointCloud) cloudpoints : PointCloud.copyOf(cloudpoints));
+    }
 
-        // Update existing points
-        for (int i = 0; i <cloudpoints.size(); i++) {
-            if (landMark.getCoordinates().get(i) == null) {
-                // If the existing coordinate is null, simply add the cloud point
-                landMark.setCoordinates(i, cloudpoints.get(i));
-            } else {
-                // Otherwise, average the coordinates
-                Double newX = (landMark.getCoordinates().get(i).getX() + cloudpoints.get(i).getX()) / 2;
-                Double newY = (landMark.getCoordinates().get(i).getY() + cloudpoints.get(i).getY()) / 2;
+    /**
+     * Updates the coordinates of an existing landmark with a tracked object, as chosen by
+     * {@link #setFusion(LandMarkFusion, int)}, without allocating per point.
+     *
+     * @param landMark      The landmark to update.
+     * @param cloudpoints The cloud points of the tracked object providing the new coordinates.
+     */
+    public void updateLandMarkCoordinates(LandMark landMark, PointCloud cloudpoints) {
+        fuseCoordinates(landMark, cloudpoints);
+        landmarks.moved(landMark);
+    }
 
-                CloudPoint newCloudPoint = new CloudPoint(newX, newY);
-                landMark.setCoordinates(i, newCloudPoint);
-            }
+    private void fuseCoordinates(LandMark landMark, PointCloud cloudpoints) {
+        PointCloud coordinates = landMark.getCoordinates();
+        if (fusion == LandMarkFusion.RUNNING_MEAN) {
+            landMark.getObservations(0).fuseMean(coordinates, cloudpoints);
+            return;
+        }
+        if (fusion == LandMarkFusion.WINDOWED_MEAN) {
+            landMark.getObservations(fusionWindow).fuseWindowed(coordinates, cloudpoints);
+            return;
+        }
+        int shared = Math.min(coordinates.size(), cloudpoints.size());
+        // Average the points both have
+        for (int i = 0; i < shared; i++) {
+            double newX = (coordinates.getX(i) + cloudpoints.getX(i)) / 2;
+            double newY = (coordinates.getY(i) + cloudpoints.getY(i)) / 2;
+            coordinates.set(i, newX, newY);
+        }
+        // Points the landmark does not have yet are simply added
+        for (int i = shared; i < cloudpoints.size(); i++) {
+            coordinates.add(cloudpoints.getX(i), cloudpoints.getY(i));
         }
     }
 
     public Pose getPose(int time){
-        for(Pose p: poses){
-            if (p.getTime() == time) {
-                return p;
-            }
-        }
-        return null;
+        return poses.get(time);
     }
 
     /**
@@ -134,22 +261,7 @@ public class FusionSlam {
         if (pose == null){
             return null;
         }
-        Double xRobot = (double) pose.getX();
-        Double yRobot = (double) pose.getY();
-        Double yawRobot = (double) pose.getYaw();
-        yawRobot = Math.toRadians(yawRobot);
-        Double cosYaw = Math.cos(yawRobot);
-        Double sinYaw = Math.sin(yawRobot);
-        List<CloudPoint> newCoordinates = new ArrayList<>();
-
-        for (CloudPoint localCloudPoint : trackedObject.getCoordinates()) {
-            Double xLocal = localCloudPoint.getX();
-            Double yLocal = localCloudPoint.getY();
-            Double xGlobal = (cosYaw * xLocal) - (sinYaw * yLocal) + xRobot;
-            Double yGlobal = (sinYaw * xLocal) + (cosYaw * yLocal) + yRobot;
-            CloudPoint globalCloudPoint = new CloudPoint(xGlobal, yGlobal);
-            newCoordinates.add(globalCloudPoint);
-        }
+        PointCloud newCoordinates = pose.getTransform().apply(trackedObject.getCoordinates());
         return new LandMark(trackedObject.getId(), trackedObject.getDescription(), newCoordinates);
     }
 
@@ -173,24 +285,124 @@ public class FusionSlam {
         }
     }
 
+    /**
+     * Processes the awaiting tracked objects whose pose is known, in the order they arrived.
+     * Objects still missing their pose keep waiting.
+     * The coordinates of all the ready objects are transformed first, in one batch, and then fused into the map.
+     * With a parallelism set, large batches are fused in parallel instead (see {@link #fuseParallel(List)}).
+     */
     public void process(){
-        List<TrackedObject> copyList = new ArrayList<>(awaitingProcess);
-        for (TrackedObject trackedObject : copyList ){
-            Pose pose = getPose(trackedObject.getTime());
-            if (pose == null){
-                continue;
-            }
-            awaitingProcess.remove(trackedObject);
+        List<TrackedObject> ready = new ArrayList<>();
+        TrackedObject trackedObject;
+        while ((trackedObject = awaitingProcess.pollReady()) != null)
+            ready.add(trackedObject);
+        if (fusionPool != null && ready.size() >= PARALLEL_THRESHOLD)
+            fuseParallel(ready);
+        else
+            fuseSequential(ready);
+        if (poseRetention > 0)
+            dropOldPoses();
+        publishSnapshot();
+    }
+
+    private void fuseSequential(List<TrackedObject> ready) {
+        TrackedObject trackedObject;
+        List<PointCloud> globalCoordinates = PoseTransform.applyAll(ready, poses);
+        for (int i = 0; i < ready.size(); i++) {
+            trackedObject = ready.get(i);
             LandMark existingLandMark = findMatchingLandMark(trackedObject);
             if (existingLandMark != null) {
                 // Update the existing landmark with averaged coordinates
-                LandMark newLandMark = createNewLandMark(trackedObject.getTime(), trackedObject);
-                updateLandMarkCoordinates(existingLandMark, newLandMark.getCoordinates());
+                updateLandMarkCoordinates(existingLandMark, globalCoordinates.get(i));
             } else {
-                LandMark newLandMark = createNewLandMark(trackedObject.getTime(), trackedObject);
-                addLandMark(newLandMark);
+                addLandMark(new LandMark(trackedObject.getId(), trackedObject.getDescription(), globalCoordinates.get(i)));
                 StatisticalFolder.getInstance().addLandmarks();
             }
         }
     }
+
+    /**
+     * Fuses {@code ready} on the fusion pool. The objects are partitioned by landmark id, so every landmark is
+     * updated by a single thread, in the order its objects arrived - which is what makes the map identical to the
+     * one {@link #fuseSequential(List)} builds. New landmarks are added afterwards, in the order their first
+     * object arrived, which is where the sequential fusion adds them.
+     * <p>
+     * The store is only used on this thread: the existing landmarks are looked up before the groups are fused, and
+     * the very objects that were fused are reported to {@link LandMarkStore#moved(LandMark)} afterwards - a
+     * {@link TiledLandMarkStore} may have evicted their tiles meanwhile, and a second lookup would return a stale copy.
+     */
+    private void fuseParallel(List<TrackedObject> ready) {
+        Map<String, List<TrackedObject>> byId = new LinkedHashMap<>();
+        for (TrackedObject trackedObject : ready)
+            byId.computeIfAbsent(trackedObject.getId(), k -> new ArrayList<>()).add(trackedObject);
+        List<List<TrackedObject>> groups = new ArrayList<>(byId.values());
+        LandMark[] existing = new LandMark[groups.size()];
+        for (int i = 0; i < existing.length; i++)
+            existing[i] = findMatchingLandMark(groups.get(i).get(0));
+        LandMark[] fused = new LandMark[groups.size()];
+        fusionPool.invoke(new FuseTask(groups, existing, fused, 0, groups.size()));
+        for (int i = 0; i < fused.length; i++) {
+            if (existing[i] == null) {
+                addLandMark(fused[i]);
+                StatisticalFolder.getInstance().addLandmarks();
+            } else {
+                landmarks.moved(fused[i]);
+            }
+        }
+    }
+
+    /**
+     * Fuses the objects of one landmark id, in order, into {@code landMark}. Never touches the landmarks store.
+     * @param landMark the landmark of the id, or null if it has none yet.
+     * @return the landmark fused - {@code landMark}, or the one created for the id.
+     */
+    private LandMark fuseGroup(List<TrackedObject> group, LandMark landMark) {
+        for (TrackedObject trackedObject : group) {
+            PointCloud globalCoordinates = getPose(trackedObject.getTime()).getTransform().apply(trackedObject.getCoordinates());
+            if (landMark == null)
+                landMark = new LandMark(trackedObject.getId(), trackedObject.getDescription(), globalCoordinates);
+            else
+                fuseCoordinates(landMark, globalCoordinates);
+        }
+        return landMark;
+    }
+
+    /**
+     * Fuses the groups in [from, to), splitting the range until it is small enough.
+     */
+    private class FuseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<TrackedObject>> groups;
+        private final LandMark[] existing;
+        private final LandMark[] fused;
+        private final int from;
+        private final int to;
+
+        FuseTask(List<List<TrackedObject>> groups, LandMark[] existing, LandMark[] fused, int from, int to) {
+            this.groups = groups;
+            this.existing = existing;
+            this.fused = fused;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GROUPS_PER_TASK) {
+                for (int i = from; i < to; i++)
+                    fused[i] = fuseGroup(groups.get(i), existing[i]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FuseTask(groups, existing, fused, from, middle), new FuseTask(groups, existing, fused, middle, to));
+        }
+    }
+
+    /**
+     * Drops the poses older than the retention window, except for those awaiting tracked objects still need.
+     */
+    private void dropOldPoses() {
+        poses.retainFrom(Math.min(poses.getNewestTime() - poseRetention + 1, awaitingProcess.getOldestTime()));
+    }
 }
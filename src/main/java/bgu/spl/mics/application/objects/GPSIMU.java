@@ -17,6 +17,7 @@ public class GPSIMU {
     private STATUS status;
     private List<Pose> poseList;
     private String filePath;
+    private boolean loaded;
 
     public GPSIMU(String filePath){
         status = STATUS.UP;
@@ -36,7 +37,18 @@ public class GPSIMU {
         this.status = status;
     }
 
+    /**
+     * Loads the poses, from the binary form of the file if it was converted (see {@link BinaryRecording}).
+     * If the file cannot be read, the poses are left unloaded.
+     */
     public void loadPoseData() {
+        BinaryRecording binary = BinaryRecording.openFor(filePath);
+        if (binary != null && binary.getKind() == BinaryRecording.Kind.POSES) {
+            for (int i = 0; i < binary.size(); i++)
+                poseList.add(binary.getPose(i));
+            loaded = true;
+            return;
+        }
         Gson gson = new Gson();
         try (FileReader reader = new FileReader(filePath)) {
             Type poseDataType = new TypeToken<List<Pose>>() {}.getType();
@@ -44,8 +56,16 @@ public class GPSIMU {
             for (Pose currPose : poseData){
                 poseList.add(currPose);
             }
+            loaded = true;
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * @return whether the poses were loaded from the file.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
 }
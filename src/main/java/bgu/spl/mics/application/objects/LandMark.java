@@ -1,6 +1,5 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -10,17 +9,21 @@ import java.util.List;
 public class LandMark {
     private String id;
     private String description;
-    private List<CloudPoint> coordinates;
+    private PointCloud coordinates;
+    private transient Observations observations; // only for the mean fusions, not written to the output
 
     public LandMark(String id, String description){
         this.id = id;
         this.description = description;
-        coordinates = new ArrayList<>();
+        coordinates = new PointCloud();
     }
 
+    /**
+     * @param coordinates The coordinates of the landmark - kept as they are if it is a {@link PointCloud}, copied otherwise.
+     */
     public LandMark(String id, String description, List<CloudPoint> coordinates){
         this(id, description);
-        this.coordinates = coordinates;
+        this.coordinates = coordinates instanceof PointCloud ? (PointCloud) coordinates : PointCloud.copyOf(coordinates);
     }
 
     public String getId() {
@@ -39,7 +42,25 @@ public class LandMark {
         coordinates.add(point);
     }
 
-    public List<CloudPoint> getCoordinates() {
+    public PointCloud getCoordinates() {
         return coordinates;
     }
+
+    /**
+     * @return the number of observations fused into point {@code index} by a mean fusion
+     * (1 if the landmark was never fused that way).
+     */
+    public int getObservationCount(int index) {
+        return observations == null || index >= observations.size() ? 1 : observations.getCount(index);
+    }
+
+    /**
+     * @return the observations of the points, started over if the fusion window changed or the coordinates were
+     * changed other than by fusion.
+     */
+    Observations getObservations(int window) {
+        if (observations == null || observations.getWindow() != window || observations.size() != coordinates.size())
+            observations = new Observations(coordinates, window);
+        return observations;
+    }
 }
@@ -0,0 +1,21 @@
+package bgu.spl.mics.application.objects;
+
+/**
+ * How FusionSlam merges a new observation of a landmark into its coordinates.
+ */
+public enum LandMarkFusion {
+    /**
+     * Each point becomes the average of its old value and the new observation, so the newest observation always
+     * weighs half. The original behavior, and the default.
+     */
+    HALVING,
+    /**
+     * Each point is the mean of all its observations, kept as a running mean with a count per point.
+     */
+    RUNNING_MEAN,
+    /**
+     * Each point is the mean of its last observations only (see {@link FusionSlam#setFusion(LandMarkFusion, int)}),
+     * so the map still follows a landmark that moves.
+     */
+    WINDOWED_MEAN
+}
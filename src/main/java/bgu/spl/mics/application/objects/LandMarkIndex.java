@@ -0,0 +1,161 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The landmarks of the map, in the order they were added, indexed by id.
+ * It is a regular {@link List} (so it is written to the output file as a JSON array, in insertion order),
+ * and {@link #findById(String)} finds a landmark in constant time instead of scanning the list.
+ * The landmarks are also kept in a {@link SpatialGrid}, so {@link #findWithin(double, double, double)} and
+ * {@link #findNearest(double, double, int)} find the landmarks near a point without scanning the list either.
+ * Whoever changes the coordinates of a landmark in the index reports it with {@link #moved(LandMark)}.
+ * The index also records which positions were added or moved, so {@link MapSnapshot} copies only those.
+ * <p>
+ * When several landmarks share an id, {@link #findById(String)} returns the first of them, like a scan would.
+ * Not thread safe, like the list it replaces.
+ */
+public class LandMarkIndex extends AbstractList<LandMark> implements LandMarkStore, RandomAccess {
+    private final List<LandMark> landmarks;
+    private final Map<String, LandMark> byId;
+    private final SpatialGrid grid;
+    private final Map<LandMark, Integer> positions; // valid unless reordered
+    private BitSet changed; // positions added or moved since the last takeChanged()
+    private boolean reordered; // the list changed other than at its end since the last takeChanged()
+
+    public LandMarkIndex() {
+        landmarks = new ArrayList<>();
+        byId = new HashMap<>();
+        grid = new SpatialGrid();
+        positions = new IdentityHashMap<>();
+        changed = new BitSet();
+        reordered = false;
+    }
+
+    @Override
+    public LandMark findById(String id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public List<LandMark> findWithin(double x, double y, double radius) {
+        return grid.findWithin(x, y, radius);
+    }
+
+    @Override
+    public List<LandMark> findNearest(double x, double y, int k) {
+        return grid.findNearest(x, y, k);
+    }
+
+    @Override
+    public void moved(LandMark landMark) {
+        grid.update(landMark);
+        Integer position = positions.get(landMark);
+        if (position != null)
+            changed.set(position);
+    }
+
+    /**
+     * @return the positions added or moved since the last call, or null if the list changed other than at its end
+     * (so every position may have changed).
+     */
+    BitSet takeChanged() {
+        if (reordered) {
+            reordered = false;
+            changed = new BitSet();
+            positions.clear();
+            for (int i = 0; i < landmarks.size(); i++)
+                positions.putIfAbsent(landmarks.get(i), i);
+            return null;
+        }
+        BitSet taken = changed;
+        changed = new BitSet();
+        return taken;
+    }
+
+    @Override
+    public LandMark get(int index) {
+        return landmarks.get(index);
+    }
+
+    @Override
+    public int size() {
+        return landmarks.size();
+    }
+
+    @Override
+    public void add(int index, LandMark landMark) {
+        landmarks.add(index, landMark);
+        modCount++;
+        boolean appended = index == landmarks.size() - 1;
+        if (appended)
+            changed.set(index);
+        else
+            reordered = true;
+        if (landMark == null)
+            return;
+        grid.add(landMark);
+        if (appended) {
+            byId.putIfAbsent(landMark.getId(), landMark); //an earlier landmark with the id stays first
+            positions.putIfAbsent(landMark, index);
+        } else {
+            reindex(landMark.getId());
+        }
+    }
+
+    @Override
+    public LandMark set(int index, LandMark landMark) {
+        LandMark previous = landmarks.set(index, landMark);
+        reordered = true;
+        if (previous != null) {
+            grid.remove(previous);
+            reindex(previous.getId());
+        }
+        if (landMark != null) {
+            grid.add(landMark);
+            reindex(landMark.getId());
+        }
+        return previous;
+    }
+
+    @Override
+    public LandMark remove(int index) {
+        LandMark removed = landmarks.remove(index);
+        modCount++;
+        reordered = true;
+        if (removed != null) {
+            grid.remove(removed);
+            reindex(removed.getId());
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        landmarks.clear();
+        byId.clear();
+        grid.clear();
+        positions.clear();
+        reordered = true;
+        modCount++;
+    }
+
+    /**
+     * Points {@code id} at the first landmark with that id - needed only when the list changes other than at its end.
+     */
+    private void reindex(String id) {
+        byId.remove(id);
+        for (LandMark landMark : landmarks) {
+            if (landMark != null && landMark.getId().equals(id)) {
+                byId.put(id, landMark);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.List;
+
+/**
+ * The landmarks of the map, in the order they were added (the order they are written to the output file in),
+ * with lookups by id and by position.
+ * Whoever changes the coordinates of a landmark in the store reports it with {@link #moved(LandMark)}.
+ */
+public interface LandMarkStore extends List<LandMark> {
+    /**
+     * @return the first landmark with id {@code id}, or null if there is none.
+     */
+    LandMark findById(String id);
+
+    /**
+     * @return the landmarks with a point within {@code radius} of ({@code x}, {@code y}), nearest first.
+     */
+    List<LandMark> findWithin(double x, double y, double radius);
+
+    /**
+     * @return the {@code k} landmarks nearest to ({@code x}, {@code y}), nearest first.
+     */
+    List<LandMark> findNearest(double x, double y, int k);
+
+    /**
+     * Reports that the coordinates of {@code landMark} changed.
+     */
+    void moved(LandMark landMark);
+}
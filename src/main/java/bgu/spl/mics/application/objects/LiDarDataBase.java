@@ -2,27 +2,66 @@ package bgu.spl.mics.application.objects;
 
 import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * LiDarDataBase is a singleton class responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * The file is read with a streaming {@link JsonReader}, one frame (the cloud points of one object at one time) at a
+ * time, and the x and y of the points are kept in primitive arrays. By default the whole file is read when the
+ * database is created. With a window (see {@link #setWindow(int)}), frames are read only as far as
+ * {@link #find(int, int)} needs them, plus the window ahead, and frames older than the window behind the time every
+ * worker asked for are dropped - so the memory it takes does not grow with the length of the recording. That needs
+ * the frames of the file to be in time order, as recordings are. Workers {@link #register(int)} before they ask,
+ * so one that runs behind the others keeps the frames it still needs, and {@link #leave(int)} once they stop.
+ * <p>
+ * If the file was converted to a {@link BinaryRecording}, frames are read from the binary file instead, the same way
+ * - and, as long as its frames are in time order, only as far as {@link #find(int, int)} needs them even without a
+ * window, since a binary recording is mapped rather than parsed and a frame costs nothing before it is read.
+ * <p>
+ * Thread safe.
  */
 public class LiDarDataBase {
 
     private static LiDarDataBase instance = null;
-    private List<StampedCloudPoints> stampedCloudPoints;
+    private static int defaultWindow = 0; // in ticks, 0 reads the whole file at once
+    private static final StampedCloudPoints[] NONE = new StampedCloudPoints[0];
+
+    private final int window;
+    private List<StampedCloudPoints> stampedCloudPoints; // the frames read and not dropped yet
+    private int droppedFrames;
+    private Map<Integer, StampedCloudPoints[]> index; // time -> frames, in the order of the file; never changed in place
+    private final Map<Integer, Integer> progress; // worker id -> the newest time it asked for
+    private transient JsonReader reader; // null once the whole file was read
+    private transient BinaryRecording binary; // read instead of the JSON file, null once read
+    private int binaryFrames; // the frames of the binary recording, known before they are read; -1 for a JSON file
+    private int nextBinaryFrame;
+    private int lastTimeRead;
     private int trackedPoints;
 
-    private LiDarDataBase(String filePath){
+    /**
+     * @param window see {@link #setWindow(int)}.
+     */
+    LiDarDataBase(String filePath, int window){
+            this.window = Math.max(window, 0);
             stampedCloudPoints = new ArrayList<>();
-            loadLidarData(filePath);
+            index = new HashMap<>();
+            progress = new HashMap<>();
+            droppedFrames = 0;
+            lastTimeRead = Integer.MIN_VALUE;
             trackedPoints = 0;
+            binaryFrames = -1;
+            openLidarData(filePath);
+            if (window <= 0 && (binary == null || !inTimeOrder(binary)))
+                readThrough(Integer.MAX_VALUE);
     }
 
     /**
@@ -31,30 +70,196 @@ public class LiDarDataBase {
      */
     public static LiDarDataBase getInstance(String filePath) {
         if (instance == null){
-            instance = new LiDarDataBase(filePath);
+            instance = new LiDarDataBase(filePath, defaultWindow);
         }
         return instance;
     }
 
-    public List<StampedCloudPoints> getStampedCloudPoints() {
-        return stampedCloudPoints;
+    /**
+     * Makes the database read its file in a sliding window of {@code ticks} around the times asked for, instead of
+     * all at once. Must be called before the database is created. 0 reads the whole file at once.
+     * Times are asked for as cameras report their detections, so the window must be at least the largest
+     * frequency of a camera - the runner raises smaller windows.
+     */
+    public static void setWindow(int ticks) {
+        defaultWindow = Math.max(ticks, 0);
+    }
+
+    /**
+     * @return the frames in memory, in the order of the file: all of them, unless the database reads in a window or
+     * from a binary recording - then, those read so far and not dropped.
+     */
+    public synchronized List<StampedCloudPoints> getStampedCloudPoints() {
+        return new ArrayList<>(stampedCloudPoints);
+    }
+
+    /**
+     * Makes the database keep the frames {@code worker} may still ask for, from before its first
+     * {@link #find(int, int)}.
+     */
+    public synchronized void register(int worker) {
+        progress.putIfAbsent(worker, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Stops keeping frames for {@code worker}, which will not ask for any more.
+     */
+    public synchronized void leave(int worker) {
+        progress.remove(worker);
+    }
+
+    /**
+     * @return the frames at {@code time}, in the order of the file, or none. The array must not be changed.
+     */
+    public synchronized StampedCloudPoints[] find(int worker, int time) {
+        readThrough(time + window); // nothing left to read unless in a window or from a binary recording
+        if (window > 0) {
+            progress.merge(worker, time, Math::max);
+            int oldest = Integer.MAX_VALUE;
+            for (int asked : progress.values())
+                oldest = Math.min(oldest, asked);
+            if (oldest != Integer.MIN_VALUE) // every worker asked at least once
+                dropBefore(oldest - window);
+        }
+        StampedCloudPoints[] frames = index.get(time);
+        return frames == null ? NONE : frames;
+    }
+
+    private void openLidarData(String filePath){
+        binary = BinaryRecording.openFor(filePath);
+        if (binary != null) {
+            if (binary.getKind() == BinaryRecording.Kind.LIDAR) {
+                binaryFrames = binary.size();
+                return;
+            }
+            binary = null;
+        }
+        try {
+            reader = new JsonReader(new FileReader(filePath));
+            reader.beginArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    private static boolean inTimeOrder(BinaryRecording binary) {
+        for (int i = 1; i < binary.size(); i++) {
+            if (binary.getFrameTime(i) < binary.getFrameTime(i - 1))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads frames until one after {@code time} was read, or the file ends.
+     */
+    private void readThrough(int time){
+        try {
+            while ((reader != null || binary != null) && lastTimeRead <= time) {
+                StampedCloudPoints frame;
+                if (binary != null) {
+                    if (nextBinaryFrame == binary.size()) {
+                        binary = null;
+                        return;
+                    }
+                    frame = binary.getFrame(nextBinaryFrame++);
+                } else {
+                    if (!reader.hasNext()) {
+                        close();
+                        return;
+                    }
+                    frame = readFrame(reader);
+                }
+                stampedCloudPoints.add(frame);
+                lastTimeRead = Math.max(lastTimeRead, frame.getTime());
+                index.merge(frame.getTime(), new StampedCloudPoints[]{frame}, (frames, added) -> {
+                    StampedCloudPoints[] merged = Arrays.copyOf(frames, frames.length + 1);
+                    merged[frames.length] = added[0];
+                    return merged;
+                });
+            }
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Drops the frames, from the start of the window, whose time is before {@code time}.
+     */
+    private void dropBefore(int time){
+        int dropped = 0;
+        while (dropped < stampedCloudPoints.size() && stampedCloudPoints.get(dropped).getTime() < time) {
+            StampedCloudPoints[] frames = index.get(stampedCloudPoints.get(dropped).getTime());
+            if (frames.length == 1) // the frame is the first of its time, being the oldest in memory
+                index.remove(frames[0].getTime());
+            else
+                index.put(frames[0].getTime(), Arrays.copyOfRange(frames, 1, frames.length));
+            dropped++;
+        }
+        if (dropped > 0) {
+            stampedCloudPoints.subList(0, dropped).clear();
+            droppedFrames += dropped;
+        }
     }
 
-    private void loadLidarData(String filePath){
-        Gson gson = new Gson();
-        try (FileReader reader = new FileReader(filePath)) {
-            Type LidarDataType = new TypeToken<List<StampedCloudPoints>>() {}.getType();
-            List<StampedCloudPoints> lidarData = gson.fromJson(reader, LidarDataType);
-            for (StampedCloudPoints stampedObj : lidarData) {
-                stampedCloudPoints.add(stampedObj);
+    /**
+     * Reads {"time": t, "id": "...", "cloudPoints": [[x, y, z], ...]}, keeping the x and y of each point.
+     */
+    private static StampedCloudPoints readFrame(JsonReader reader) throws IOException {
+        String id = null;
+        int time = 0;
+        PointCloud points = new PointCloud();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "time":
+                    time = reader.nextInt();
+                    break;
+                case "cloudPoints":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginArray();
+                        double x = reader.nextDouble();
+                        double y = reader.nextDouble();
+                        while (reader.peek() != JsonToken.END_ARRAY)
+                            reader.skipValue();
+                        reader.endArray();
+                        points.add(x, y);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
             }
+        }
+        reader.endObject();
+        return new StampedCloudPoints(id, time, points);
+    }
+
+    private void close(){
+        if (reader == null)
+            return;
+        try {
+            reader.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        reader = null;
     }
 
-    public boolean isFinished(){
-        return trackedPoints == stampedCloudPoints.size();
+    /**
+     * @return whether every frame of the file was tracked - never before the whole file was read, unless the number
+     * of frames was known before (from a binary recording).
+     */
+    public synchronized boolean isFinished(){
+        if (binaryFrames >= 0)
+            return trackedPoints == binaryFrames;
+        return reader == null && trackedPoints == droppedFrames + stampedCloudPoints.size();
     }
 
     public synchronized void incTracked(){
@@ -1,7 +1,9 @@
 package bgu.spl.mics.application.objects;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * LiDarWorkerTracker is responsible for managing a LiDAR worker.
@@ -18,11 +20,16 @@ public class LiDarWorkerTracker {
 
 
     public LiDarWorkerTracker(int id, int frequency, String filePath){
+        this(id, frequency, LiDarDataBase.getInstance(filePath));
+    }
+
+    LiDarWorkerTracker(int id, int frequency, LiDarDataBase dataBase){
         this.id = id;
         this.frequency = frequency;
         status = STATUS.UP;
         lastTrackedObjects = new ArrayList<>();
-        dataBase = LiDarDataBase.getInstance(filePath);
+        this.dataBase = dataBase;
+        dataBase.register(id);
         errorOutput = ErrorOutput.getInstance();
     }
 
@@ -40,27 +47,35 @@ public class LiDarWorkerTracker {
 
     public void setStatus(STATUS status) {
         this.status = status;
+        if (status != STATUS.UP)
+            dataBase.leave(id);
     }
 
     /**
      * gets data from camera via DetectedObjectEvent and looks for the same objects coordinates at the specific time
      * adds the relevant tracked object to lastTrackedObjects list
+     * The frames at the detection time are taken from the database in a single lookup; the tracked objects are added
+     * in the order of the database and then of the detection, as a scan of the whole database would add them.
      */
     public  void checkData(StampedDetectedObjects stampedDetectedObjects){
         int time = stampedDetectedObjects.getTime();
-        List<DetectedObject> objects = stampedDetectedObjects.getDetectedObjects();
-        for (StampedCloudPoints stampedCloudPoints : dataBase.getStampedCloudPoints()){
-            if (time == stampedCloudPoints.getTime()){
-                for (DetectedObject obj : objects){
-                    if (obj.getId().equals(stampedCloudPoints.getId())){
-                        TrackedObject newTrackedObj = new TrackedObject(obj.getId(), time, obj.getDescription());
-                        for (List<Double> coordinates : stampedCloudPoints.getCloudPoints()){
-                            CloudPoint newCloudPoint = new CloudPoint(coordinates.get(0), coordinates.get(1));
-                            newTrackedObj.addCloudPoint(newCloudPoint);
-                        }
-                        lastTrackedObjects.add(newTrackedObj);
-                    }
+        StampedCloudPoints[] frames = dataBase.find(id, time);
+        if (frames.length == 0)
+            return;
+        Map<String, List<DetectedObject>> objectsById = new HashMap<>();
+        for (DetectedObject obj : stampedDetectedObjects.getDetectedObjects())
+            objectsById.computeIfAbsent(obj.getId(), k -> new ArrayList<>(1)).add(obj);
+        for (StampedCloudPoints frame : frames){
+            List<DetectedObject> objects = objectsById.get(frame.getId());
+            if (objects == null)
+                continue;
+            PointCloud points = frame.getPoints();
+            for (DetectedObject obj : objects){
+                TrackedObject newTrackedObj = new TrackedObject(obj.getId(), time, obj.getDescription());
+                for (int p = 0; p < points.size(); p++){
+                    newTrackedObj.addCloudPoint(points.getX(p), points.getY(p));
                 }
+                lastTrackedObjects.add(newTrackedObj);
             }
         }
     }
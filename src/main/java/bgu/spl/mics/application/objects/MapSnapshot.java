@@ -0,0 +1,109 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * An immutable copy of the map of FusionSlam, as it was after one {@link FusionSlam#process()}.
+ * Any thread may read a snapshot, without locks, while FusionSlam keeps changing the map: each landmark in it is a
+ * copy of its own, which nobody changes (and readers must not change either).
+ * <p>
+ * Snapshots are versioned copy-on-write: the landmarks are kept in chunks of {@value #CHUNK_SIZE}, and the next
+ * snapshot shares every chunk in which no landmark was added or changed. So publishing a snapshot costs as much as
+ * the landmarks that changed since the previous one, plus a reference per chunk - never a copy of the whole map.
+ */
+public class MapSnapshot extends AbstractList<LandMark> implements RandomAccess {
+    static final int CHUNK_SIZE = 1024;
+    private static final int CHUNK_SHIFT = 10;
+
+    public static final MapSnapshot EMPTY = new MapSnapshot(0, new LandMark[0][], 0, -1, 0);
+
+    private final long version;
+    private final LandMark[][] chunks;
+    private final int size;
+    private final int newestPoseTime;
+    private final int awaitingCount;
+
+    private MapSnapshot(long version, LandMark[][] chunks, int size, int newestPoseTime, int awaitingCount) {
+        this.version = version;
+        this.chunks = chunks;
+        this.size = size;
+        this.newestPoseTime = newestPoseTime;
+        this.awaitingCount = awaitingCount;
+    }
+
+    /**
+     * @return the snapshot following {@code previous}, copying only the landmarks of {@code landmarks} that were
+     * added or moved since it was taken (or all of them, if the list changed other than at its end).
+     */
+    static MapSnapshot next(MapSnapshot previous, LandMarkIndex landmarks, int newestPoseTime, int awaitingCount) {
+        int size = landmarks.size();
+        LandMark[][] chunks = Arrays.copyOf(previous.chunks, (size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        BitSet changed = landmarks.takeChanged();
+        if (changed == null) { // reordered - nothing can be shared
+            for (int chunk = 0; chunk < chunks.length; chunk++)
+                chunks[chunk] = new LandMark[Math.min(CHUNK_SIZE, size - (chunk << CHUNK_SHIFT))];
+            for (int i = 0; i < size; i++)
+                chunks[i >>> CHUNK_SHIFT][i & (CHUNK_SIZE - 1)] = copy(landmarks.get(i));
+        } else {
+            int copiedChunk = -1;
+            for (int i = changed.nextSetBit(0); i >= 0 && i < size; i = changed.nextSetBit(i + 1)) {
+                int chunk = i >>> CHUNK_SHIFT;
+                if (chunk != copiedChunk) { // the first change in this chunk - it is no longer shared
+                    int length = Math.min(CHUNK_SIZE, size - (chunk << CHUNK_SHIFT));
+                    chunks[chunk] = chunks[chunk] == null ? new LandMark[length] : Arrays.copyOf(chunks[chunk], length);
+                    copiedChunk = chunk;
+                }
+                chunks[chunk][i & (CHUNK_SIZE - 1)] = copy(landmarks.get(i));
+            }
+        }
+        return new MapSnapshot(previous.version + 1, chunks, size, newestPoseTime, awaitingCount);
+    }
+
+    /**
+     * @return the snapshot following {@code previous}, without landmarks - for maps too large to copy.
+     */
+    static MapSnapshot withoutLandmarks(MapSnapshot previous, int newestPoseTime, int awaitingCount) {
+        return new MapSnapshot(previous.version + 1, EMPTY.chunks, 0, newestPoseTime, awaitingCount);
+    }
+
+    private static LandMark copy(LandMark landMark) {
+        return landMark == null ? null
+                : new LandMark(landMark.getId(), landMark.getDescription(), PointCloud.copyOf(landMark.getCoordinates()));
+    }
+
+    /**
+     * @return the number of the snapshot; every snapshot FusionSlam publishes has a higher one.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the time of the newest pose FusionSlam had, or -1 if it had none.
+     */
+    public int getNewestPoseTime() {
+        return newestPoseTime;
+    }
+
+    /**
+     * @return the number of tracked objects that were waiting for their pose.
+     */
+    public int getAwaitingCount() {
+        return awaitingCount;
+    }
+
+    @Override
+    public LandMark get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return chunks[index >>> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+
+/**
+ * How many times each point of a landmark was observed and, for {@link LandMarkFusion#WINDOWED_MEAN}, its last
+ * {@code window} observations. The coordinates the landmark had before are counted as its first observation.
+ * The observations of point i are kept in the slots [i * window, (i + 1) * window) of two primitive arrays,
+ * used as a ring, so fusing allocates nothing unless the landmark gains points.
+ */
+class Observations {
+    private final int window; // 0 keeps counts only
+    private int[] counts;
+    private double[] historyX;
+    private double[] historyY;
+    private int size;
+
+    Observations(PointCloud coordinates, int window) {
+        this.window = window;
+        size = coordinates.size();
+        counts = new int[Math.max(size, 1)];
+        Arrays.fill(counts, 0, size, 1);
+        if (window > 0) {
+            historyX = new double[counts.length * window];
+            historyY = new double[historyX.length];
+            for (int i = 0; i < size; i++) {
+                historyX[i * window] = coordinates.getX(i);
+                historyY[i * window] = coordinates.getY(i);
+            }
+        }
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the number of points observed.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of observations of point {@code index}.
+     */
+    int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Moves each point of {@code coordinates} to the mean of all its observations, {@code observed} included.
+     */
+    void fuseMean(PointCloud coordinates, PointCloud observed) {
+        int shared = Math.min(coordinates.size(), observed.size());
+        for (int i = 0; i < shared; i++) {
+            int count = ++counts[i];
+            double x = coordinates.getX(i);
+            double y = coordinates.getY(i);
+            coordinates.set(i, x + (observed.getX(i) - x) / count, y + (observed.getY(i) - y) / count);
+        }
+        appendNew(coordinates, observed);
+    }
+
+    /**
+     * Moves each point of {@code coordinates} to the mean of its last {@code window} observations,
+     * {@code observed} included.
+     */
+    void fuseWindowed(PointCloud coordinates, PointCloud observed) {
+        int shared = Math.min(coordinates.size(), observed.size());
+        for (int i = 0; i < shared; i++) {
+            int base = i * window;
+            int slot = base + counts[i] % window;
+            historyX[slot] = observed.getX(i);
+            historyY[slot] = observed.getY(i);
+            int kept = Math.min(++counts[i], window);
+            double sumX = 0;
+            double sumY = 0;
+            for (int j = base; j < base + kept; j++) {
+                sumX += historyX[j];
+                sumY += historyY[j];
+            }
+            coordinates.set(i, sumX / kept, sumY / kept);
+        }
+        appendNew(coordinates, observed);
+    }
+
+    /**
+     * Points the landmark does not have yet are added as they were observed.
+     */
+    private void appendNew(PointCloud coordinates, PointCloud observed) {
+        for (int i = coordinates.size(); i < observed.size(); i++) {
+            if (size == counts.length)
+                grow();
+            double x = observed.getX(i);
+            double y = observed.getY(i);
+            coordinates.add(x, y);
+            counts[size] = 1;
+            if (window > 0) {
+                historyX[size * window] = x;
+                historyY[size * window] = y;
+            }
+            size++;
+        }
+    }
+
+    private void grow() {
+        counts = Arrays.copyOf(counts, counts.length * 2);
+        if (window > 0) {
+            historyX = Arrays.copyOf(historyX, counts.length * window);
+            historyY = Arrays.copyOf(historyY, counts.length * window);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * The tracked objects waiting to be processed by FusionSlam.
+ * An object whose pose is already known is ready right away; any other object waits in the bucket of the time of
+ * its pose, and the whole bucket becomes ready when {@link #poseArrived(int)} is called for that time. So handling
+ * a pose costs as much as the objects that were waiting for it, and nothing is scanned again and again.
+ * <p>
+ * Ready objects are taken in the order they were added, exactly as a scan of a list of the waiting objects
+ * would find them. Not thread safe.
+ */
+public class PendingObjects extends AbstractCollection<TrackedObject> {
+    private final PoseStore poses;
+    private final TreeMap<Integer, List<Pending>> waiting; // by the time of the pose waited for
+    private final PriorityQueue<Pending> ready; // by the order of adding
+    private long nextSequence;
+    private int size;
+
+    private static class Pending {
+        final TrackedObject trackedObject;
+        final long sequence;
+
+        Pending(TrackedObject trackedObject, long sequence) {
+            this.trackedObject = trackedObject;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * @param poses The poses known so far, consulted when an object is added.
+     */
+    public PendingObjects(PoseStore poses) {
+        this.poses = poses;
+        waiting = new TreeMap<>();
+        ready = new PriorityQueue<>((a, b) -> Long.compare(a.sequence, b.sequence));
+        nextSequence = 0;
+        size = 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pose of the object was already dropped (see
+     *                                  {@link PoseStore#wasDropped(int)}), so it would wait forever.
+     */
+    @Override
+    public boolean add(TrackedObject trackedObject) {
+        if (poses.wasDropped(trackedObject.getTime()))
+            throw new IllegalArgumentException("The pose at " + trackedObject.getTime() + " was already dropped");
+        Pending pending = new Pending(trackedObject, nextSequence++);
+        if (poses.get(trackedObject.getTime()) != null)
+            ready.add(pending);
+        else
+            waiting.computeIfAbsent(trackedObject.getTime(), k -> new ArrayList<>()).add(pending);
+        size++;
+        return true;
+    }
+
+    /**
+     * Makes the objects waiting for the pose at {@code time} ready.
+     */
+    public void poseArrived(int time) {
+        List<Pending> bucket = waiting.remove(time);
+        if (bucket != null)
+            ready.addAll(bucket);
+    }
+
+    /**
+     * Removes the ready object that was added first.
+     * @return the object, or null if no object is ready.
+     */
+    public TrackedObject pollReady() {
+        Pending pending = ready.poll();
+        if (pending == null)
+            return null;
+        size--;
+        return pending.trackedObject;
+    }
+
+    /**
+     * @return the earliest time a waiting object needs a pose for, or {@link Integer#MAX_VALUE} if none waits.
+     */
+    public int getOldestTime() {
+        int oldest = waiting.isEmpty() ? Integer.MAX_VALUE : waiting.firstKey();
+        for (Pending pending : ready)
+            oldest = Math.min(oldest, pending.trackedObject.getTime());
+        return oldest;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        waiting.clear();
+        ready.clear();
+        size = 0;
+    }
+
+    /**
+     * @return an iterator over the ready objects and then the waiting ones. It does not support removal.
+     */
+    @Override
+    public Iterator<TrackedObject> iterator() {
+        List<TrackedObject> all = new ArrayList<>(size);
+        for (Pending pending : ready)
+            all.add(pending.trackedObject);
+        for (List<Pending> bucket : waiting.values()) {
+            for (Pending pending : bucket)
+                all.add(pending.trackedObject);
+        }
+        return Collections.unmodifiableList(all).iterator();
+    }
+}
@@ -0,0 +1,162 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The coordinates of a tracked object or a landmark, stored as two primitive arrays (xs and ys) instead of a list
+ * of boxed {@link CloudPoint}s. {@link #getX(int)}, {@link #getY(int)}, {@link #add(double, double)} and
+ * {@link #set(int, double, double)} read and write a point without allocating anything.
+ * <p>
+ * It is also a {@code List<CloudPoint>}, whose elements are created on demand, so code that works with cloud points
+ * keeps working, and Gson writes it exactly as it wrote the list of cloud points: an array of {"x", "y"} objects.
+ * The list does not hold nulls.
+ */
+public class PointCloud extends AbstractList<CloudPoint> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    public PointCloud() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointCloud(int capacity) {
+        xs = new double[Math.max(capacity, 1)];
+        ys = new double[xs.length];
+        size = 0;
+    }
+
+    /**
+     * @return a new point cloud holding the points of {@code points}, in order.
+     */
+    public static PointCloud copyOf(Collection<CloudPoint> points) {
+        PointCloud copy = new PointCloud(points.size());
+        if (points instanceof PointCloud) {
+            PointCloud source = (PointCloud) points;
+            System.arraycopy(source.xs, 0, copy.xs, 0, source.size);
+            System.arraycopy(source.ys, 0, copy.ys, 0, source.size);
+            copy.size = source.size;
+        } else {
+            for (CloudPoint point : points)
+                copy.add(point);
+        }
+        return copy;
+    }
+
+    public double getX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    /**
+     * Appends the point ({@code x}, {@code y}).
+     */
+    public void add(double x, double y) {
+        if (size == xs.length)
+            grow();
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Replaces the point at {@code index} with ({@code x}, {@code y}).
+     */
+    public void set(int index, double x, double y) {
+        checkIndex(index);
+        xs[index] = x;
+        ys[index] = y;
+    }
+
+    @Override
+    public CloudPoint get(int index) {
+        checkIndex(index);
+        return new CloudPoint(xs[index], ys[index]);
+    }
+
+    @Override
+    public CloudPoint set(int index, CloudPoint point) {
+        CloudPoint previous = get(index);
+        set(index, point.getX(), point.getY());
+        return previous;
+    }
+
+    @Override
+    public void add(int index, CloudPoint point) {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        double x = point.getX();
+        double y = point.getY();
+        if (size == xs.length)
+            grow();
+        System.arraycopy(xs, index, xs, index + 1, size - index);
+        System.arraycopy(ys, index, ys, index + 1, size - index);
+        xs[index] = x;
+        ys[index] = y;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public CloudPoint remove(int index) {
+        CloudPoint removed = get(index);
+        System.arraycopy(xs, index + 1, xs, index, size - index - 1);
+        System.arraycopy(ys, index + 1, ys, index, size - index - 1);
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the array of x coordinates, for kernels in this package. Only the first {@link #size()} are points.
+     */
+    double[] xs() {
+        return xs;
+    }
+
+    double[] ys() {
+        return ys;
+    }
+
+    /**
+     * Sets the number of points after a kernel filled the arrays directly.
+     */
+    void setSize(int size) {
+        if (size > xs.length)
+            throw new IndexOutOfBoundsException("Size: " + size + ", Capacity: " + xs.length);
+        this.size = size;
+        modCount++;
+    }
+
+    private void grow() {
+        xs = Arrays.copyOf(xs, xs.length * 2);
+        ys = Arrays.copyOf(ys, ys.length * 2);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+}
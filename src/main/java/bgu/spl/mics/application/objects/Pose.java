@@ -9,6 +9,7 @@ public class Pose {
     private float x;
     private float y;
     private float yaw;
+    private transient PoseTransform transform; // computed on first use, not part of the JSON
 
     public Pose(int time, float x, float y, float yaw){
         this.time = time;
@@ -33,6 +34,15 @@ public class Pose {
         return time;
     }
 
+    /**
+     * @return the transform from the local coordinates of the robot at this pose to global coordinates.
+     */
+    public PoseTransform getTransform() {
+        if (transform == null)
+            transform = new PoseTransform(this); //a race only computes the same values twice
+        return transform;
+    }
+
     @Override
     public String toString() {
         return "time: " + time + ", " + "x: " + x + ", " + "y: " + y + ", " + "yaw: " + yaw;
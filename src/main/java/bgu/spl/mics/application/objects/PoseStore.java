@@ -0,0 +1,128 @@
+package bgu.spl.mics.application.objects;
+
+/**
+ * The poses of the robot, indexed by time (tick).
+ * Poses are kept in a ring of slots addressed by {@code time & mask}, so a lookup by time is a single array read.
+ * The ring always covers the times from the oldest to the newest pose kept, and grows (to the next power of two)
+ * when a pose falls outside of it. Ticks without a pose are simply empty slots.
+ * <p>
+ * {@link #retainFrom(int)} drops poses that are no longer needed, which keeps the ring as small as the
+ * range of times that can still be asked for, and {@link #wasDropped(int)} tells a time whose pose is gone from one
+ * whose pose has not arrived yet. Not thread safe, like the list it replaces.
+ */
+public class PoseStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Pose[] slots;
+    private int oldest;  // the time of the first slot covered, valid if size > 0
+    private int newest;  // the time of the last slot covered, valid if size > 0
+    private int size;
+    private int retainedFrom; // poses before this time were dropped
+
+    public PoseStore() {
+        slots = new Pose[INITIAL_CAPACITY];
+        size = 0;
+        retainedFrom = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds {@code pose} at its time. If a pose at that time is already kept, the first one stays.
+     */
+    public void add(Pose pose) {
+        int time = pose.getTime();
+        if (size == 0) {
+            oldest = time;
+            newest = time;
+        } else {
+            int from = Math.min(oldest, time);
+            int to = Math.max(newest, time);
+            if ((long) to - from + 1 > slots.length)
+                resize(from, to);
+            oldest = from;
+            newest = to;
+        }
+        int slot = time & (slots.length - 1);
+        if (slots[slot] == null) {
+            slots[slot] = pose;
+            size++;
+        }
+    }
+
+    /**
+     * @return the pose at {@code time}, or null if there is none (or it was dropped).
+     */
+    public Pose get(int time) {
+        if (size == 0 || time < oldest || time > newest)
+            return null;
+        return slots[time & (slots.length - 1)];
+    }
+
+    /**
+     * Drops the poses before {@code time}.
+     */
+    public void retainFrom(int time) {
+        if (size == 0 || time <= oldest) {
+            retainedFrom = Math.max(retainedFrom, time);
+            return;
+        }
+        if (time > newest) {
+            clear();
+            retainedFrom = time;
+            return;
+        }
+        retainedFrom = Math.max(retainedFrom, time);
+        int mask = slots.length - 1;
+        for (int t = oldest; t < time; t++) {
+            if (slots[t & mask] != null) {
+                slots[t & mask] = null;
+                size--;
+            }
+        }
+        oldest = time;
+    }
+
+    /**
+     * @return whether the pose at {@code time} is missing because {@link #retainFrom(int)} dropped the poses of that
+     * time - so it will never be found, unlike a pose that has not arrived yet.
+     */
+    public boolean wasDropped(int time) {
+        return time < retainedFrom && get(time) == null;
+    }
+
+    /**
+     * @return the time of the newest pose kept, or -1 if there is none.
+     */
+    public int getNewestTime() {
+        return size == 0 ? -1 : newest;
+    }
+
+    /**
+     * @return the number of poses kept.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        slots = new Pose[INITIAL_CAPACITY];
+        size = 0;
+        retainedFrom = Integer.MIN_VALUE;
+    }
+
+    private void resize(int from, int to) {
+        int capacity = slots.length;
+        while (capacity < (long) to - from + 1)
+            capacity <<= 1;
+        Pose[] resized = new Pose[capacity];
+        for (int t = oldest; t <= newest; t++) {
+            Pose pose = slots[t & (slots.length - 1)];
+            if (pose != null)
+                resized[t & (capacity - 1)] = pose;
+        }
+        slots = resized;
+    }
+}
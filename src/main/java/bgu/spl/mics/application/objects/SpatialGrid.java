@@ -0,0 +1,252 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the coordinates of landmarks, answering which landmarks are near a point.
+ * The plane is cut into square cells of {@code cellSize}, and a landmark is listed in every cell one of its points
+ * falls in. A query only looks at the cells around its point, so it costs as much as the landmarks nearby and not
+ * as much as the whole map.
+ * <p>
+ * The distance of a landmark from a point is the distance of its nearest point; landmarks without coordinates are
+ * never found. Landmarks are told apart by identity, and the grid must be told when the coordinates of a landmark
+ * change ({@link #update(LandMark)}). Not thread safe.
+ */
+public class SpatialGrid {
+    public static final double DEFAULT_CELL_SIZE = 2.0;
+
+    private final double cellSize;
+    private final Map<Long, List<LandMark>> cells;
+    private final Map<LandMark, long[]> cellsOf; // the cells each landmark is listed in
+    private int located; // landmarks listed in at least one cell
+    private boolean bounded;
+    private int minCellX, maxCellX, minCellY, maxCellY; // bounds of the cells ever occupied, valid if bounded
+
+    public SpatialGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialGrid(double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        cellsOf = new IdentityHashMap<>();
+    }
+
+    /**
+     * Indexes {@code landMark} at its current coordinates. Adding a landmark twice indexes it once.
+     */
+    public void add(LandMark landMark) {
+        if (cellsOf.containsKey(landMark))
+            return;
+        PointCloud coordinates = landMark.getCoordinates();
+        long[] occupied = new long[coordinates.size()];
+        int count = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            int cellX = cellOf(coordinates.getX(i));
+            int cellY = cellOf(coordinates.getY(i));
+            long key = key(cellX, cellY);
+            List<LandMark> cell = cells.computeIfAbsent(key, k -> new ArrayList<>(2));
+            if (!cell.isEmpty() && cell.get(cell.size() - 1) == landMark)
+                continue; // already listed here, by an earlier point
+            cell.add(landMark);
+            occupied[count++] = key;
+            stretchBounds(cellX, cellY);
+        }
+        cellsOf.put(landMark, count == occupied.length ? occupied : Arrays.copyOf(occupied, count));
+        if (count > 0)
+            located++;
+    }
+
+    /**
+     * Stops indexing {@code landMark}.
+     */
+    public void remove(LandMark landMark) {
+        long[] occupied = cellsOf.remove(landMark);
+        if (occupied == null)
+            return;
+        if (occupied.length > 0)
+            located--;
+        for (long key : occupied) {
+            List<LandMark> cell = cells.get(key);
+            for (int i = cell.size() - 1; i >= 0; i--) {
+                if (cell.get(i) == landMark) {
+                    cell.remove(i);
+                    break;
+                }
+            }
+            if (cell.isEmpty())
+                cells.remove(key);
+        }
+    }
+
+    /**
+     * Re-indexes {@code landMark} after its coordinates changed. Does nothing if it is not indexed.
+     */
+    public void update(LandMark landMark) {
+        if (!cellsOf.containsKey(landMark))
+            return;
+        remove(landMark);
+        add(landMark);
+    }
+
+    public boolean contains(LandMark landMark) {
+        return cellsOf.containsKey(landMark);
+    }
+
+    /**
+     * @return the number of landmarks indexed.
+     */
+    public int size() {
+        return cellsOf.size();
+    }
+
+    public void clear() {
+        cells.clear();
+        cellsOf.clear();
+        located = 0;
+        bounded = false;
+    }
+
+    /**
+     * @return the landmarks with a point within {@code radius} of ({@code x}, {@code y}), nearest first.
+     */
+    public List<LandMark> findWithin(double x, double y, double radius) {
+        List<Candidate> found = new ArrayList<>();
+        if (located == 0 || radius < 0)
+            return Collections.emptyList();
+        int fromX = Math.max(cellOf(x - radius), minCellX);
+        int toX = Math.min(cellOf(x + radius), maxCellX);
+        int fromY = Math.max(cellOf(y - radius), minCellY);
+        int toY = Math.min(cellOf(y + radius), maxCellY);
+        Map<LandMark, Boolean> seen = new IdentityHashMap<>();
+        if ((long) (toX - fromX + 1) * (toY - fromY + 1) <= cells.size()) {
+            for (int cellX = fromX; cellX <= toX; cellX++) {
+                for (int cellY = fromY; cellY <= toY; cellY++)
+                    collect(cells.get(key(cellX, cellY)), x, y, radius, seen, found);
+            }
+        } else { // the circle covers more cells than are occupied - visit the occupied ones instead
+            for (Map.Entry<Long, List<LandMark>> cell : cells.entrySet()) {
+                int cellX = (int) (cell.getKey() >> 32);
+                int cellY = (int) (long) cell.getKey();
+                if (cellX >= fromX && cellX <= toX && cellY >= fromY && cellY <= toY)
+                    collect(cell.getValue(), x, y, radius, seen, found);
+            }
+        }
+        return sorted(found, found.size());
+    }
+
+    /**
+     * @return the {@code k} landmarks nearest to ({@code x}, {@code y}), nearest first
+     * (fewer if fewer are indexed). Landmarks at the same distance are ordered by id.
+     */
+    public List<LandMark> findNearest(double x, double y, int k) {
+        if (located == 0 || k <= 0)
+            return Collections.emptyList();
+        int centerX = cellOf(x);
+        int centerY = cellOf(y);
+        int maxRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX), Math.max(centerY - minCellY, maxCellY - centerY));
+        // rings closer than the occupied cells are empty
+        int firstRing = Math.max(0, Math.max(Math.max(minCellX - centerX, centerX - maxCellX),
+                Math.max(minCellY - centerY, centerY - maxCellY)));
+        List<Candidate> found = new ArrayList<>();
+        Map<LandMark, Boolean> seen = new IdentityHashMap<>();
+        for (int ring = firstRing; ring <= maxRing; ring++) {
+            for (int cellX = Math.max(centerX - ring, minCellX); cellX <= Math.min(centerX + ring, maxCellX); cellX++) {
+                if (cellX == centerX - ring || cellX == centerX + ring) {
+                    for (int cellY = Math.max(centerY - ring, minCellY); cellY <= Math.min(centerY + ring, maxCellY); cellY++)
+                        collect(cells.get(key(cellX, cellY)), x, y, Double.POSITIVE_INFINITY, seen, found);
+                } else {
+                    collect(cells.get(key(cellX, centerY - ring)), x, y, Double.POSITIVE_INFINITY, seen, found);
+                    collect(cells.get(key(cellX, centerY + ring)), x, y, Double.POSITIVE_INFINITY, seen, found);
+                }
+            }
+            // every cell outside of the rings visited is at least this far away
+            double covered = ring * cellSize + Math.min(Math.min(x - centerX * cellSize, (centerX + 1) * cellSize - x),
+                    Math.min(y - centerY * cellSize, (centerY + 1) * cellSize - y));
+            if (seen.size() == located || countWithin(found, covered) >= k)
+                break;
+        }
+        return sorted(found, k);
+    }
+
+    static class Candidate {
+        final LandMark landMark;
+        final double distance;
+
+        Candidate(LandMark landMark, double distance) {
+            this.landMark = landMark;
+            this.distance = distance;
+        }
+    }
+
+    private static void collect(List<LandMark> cell, double x, double y, double radius,
+                                Map<LandMark, Boolean> seen, List<Candidate> found) {
+        if (cell == null)
+            return;
+        for (LandMark landMark : cell) {
+            if (seen.put(landMark, Boolean.TRUE) != null)
+                continue;
+            double distance = distance(landMark.getCoordinates(), x, y);
+            if (distance <= radius)
+                found.add(new Candidate(landMark, distance));
+        }
+    }
+
+    static double distance(PointCloud coordinates, double x, double y) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < coordinates.size(); i++) {
+            double dx = coordinates.getX(i) - x;
+            double dy = coordinates.getY(i) - y;
+            nearest = Math.min(nearest, dx * dx + dy * dy);
+        }
+        return Math.sqrt(nearest);
+    }
+
+    private static int countWithin(List<Candidate> found, double distance) {
+        int count = 0;
+        for (Candidate candidate : found) {
+            if (candidate.distance <= distance)
+                count++;
+        }
+        return count;
+    }
+
+    static List<LandMark> sorted(List<Candidate> found, int limit) {
+        found.sort((a, b) -> a.distance != b.distance ? Double.compare(a.distance, b.distance)
+                : a.landMark.getId().compareTo(b.landMark.getId()));
+        List<LandMark> landMarks = new ArrayList<>(Math.min(limit, found.size()));
+        for (int i = 0; i < found.size() && i < limit; i++)
+            landMarks.add(found.get(i).landMark);
+        return landMarks;
+    }
+
+    private void stretchBounds(int cellX, int cellY) {
+        if (!bounded) {
+            minCellX = maxCellX = cellX;
+            minCellY = maxCellY = cellY;
+            bounded = true;
+            return;
+        }
+        minCellX = Math.min(minCellX, cellX);
+        maxCellX = Math.max(maxCellX, cellX);
+        minCellY = Math.min(minCellY, cellY);
+        maxCellY = Math.max(maxCellY, cellY);
+    }
+
+    private int cellOf(double coordinate) {
+        double cell = Math.floor(coordinate / cellSize);
+        return (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, cell));
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+}
@@ -1,16 +1,22 @@
 package bgu.spl.mics.application.objects;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a group of cloud points corresponding to a specific timestamp.
  * Used by the LiDAR system to store and process point cloud data for tracked objects.
+ * <p>
+ * Points read by {@link LiDarDataBase} are kept as a {@link PointCloud} of their x and y only, which
+ * {@link #getCloudPoints()} presents as a list of [x, y] lists.
  */
 public class StampedCloudPoints {
     private String id;
     private int time;
     private List<List<Double>> cloudPoints;
+    private transient PointCloud points;
 
     public StampedCloudPoints(String id, int time) {
         this.id = id;
@@ -18,6 +24,15 @@ public class StampedCloudPoints {
         cloudPoints = new ArrayList<>();
     }
 
+    /**
+     * @param points The x and y of each point.
+     */
+    public StampedCloudPoints(String id, int time, PointCloud points) {
+        this.id = id;
+        this.time = time;
+        this.points = points;
+    }
+
     public int getTime() {
         return time;
     }
@@ -27,6 +42,41 @@ public class StampedCloudPoints {
     }
 
     public List<List<Double>> getCloudPoints() {
+        if (cloudPoints == null)
+            cloudPoints = new CoordinateLists(points);
         return cloudPoints;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the x and y of each point, without boxing.
+     */
+    public PointCloud getPoints() {
+        if (points == null) { // built from lists of coordinates
+            points = new PointCloud(cloudPoints.size());
+            for (List<Double> coordinates : cloudPoints)
+                points.add(coordinates.get(0), coordinates.get(1));
+        }
+        return points;
+    }
+
+    /**
+     * A point cloud as lists of coordinates, created on demand.
+     */
+    private static class CoordinateLists extends AbstractList<List<Double>> {
+        private final PointCloud points;
+
+        CoordinateLists(PointCloud points) {
+            this.points = points;
+        }
+
+        @Override
+        public List<Double> get(int index) {
+            return Arrays.asList(points.getX(index), points.getY(index));
+        }
+
+        @Override
+        public int size() {
+            return points.size();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package bgu.spl.mics.application.objects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A {@link LandMarkStore} for maps too large to keep on the heap.
+ * The plane is cut into square tiles of {@code tileSize}, and each landmark lives in the tile of its first point.
+ * Only the {@code hotTiles} tiles used most recently stay in memory; the least recently used tile is written to a
+ * file in {@code directory} when another one is needed, and read back the next time one of its landmarks is.
+ * What stays on the heap for every landmark is its id and where it is - a tile and a slot in it.
+ * <p>
+ * The store is a list in the order landmarks were added, like {@link LandMarkIndex}, so it is written to the output
+ * file the same way, loading tiles as it goes. A robot maps its surroundings as it moves, so consecutive landmarks
+ * are usually in the same tiles and writing the map reads every tile about once.
+ * <p>
+ * Landmarks can only be appended, and ids are unique. A landmark read back from disk is a new object: one changed
+ * after its tile was evicted is put back by {@link #moved(LandMark)}, which every change must be reported with anyway.
+ * The observation counts of mean fusions ({@link LandMarkFusion}) are not written, so they start over when a tile
+ * is read back. Thread safe.
+ */
+public class TiledLandMarkStore extends AbstractList<LandMark> implements LandMarkStore, RandomAccess {
+    private final double tileSize;
+    private final int hotTiles;
+    private final Path directory;
+    private final LinkedHashMap<Long, List<LandMark>> resident; // in access order - the first is the least recently used
+    private final Set<Long> dirty; // resident tiles changed since they were last written
+    private final Set<Long> tiles; // every tile with landmarks, resident or written
+    private final Map<String, Integer> byId; // the position of each landmark
+    private long[] tileOf; // by position
+    private int[] slotOf; // by position - removed landmarks leave an empty (null) slot in their old tile
+    private int size;
+    private double extent; // the farthest any point is from the first point of its landmark
+    private int minTileX, maxTileX, minTileY, maxTileY; // valid if size > 0
+
+    /**
+     * @param tileSize  The side of a tile.
+     * @param hotTiles  The number of tiles kept in memory.
+     * @param directory Where evicted tiles are written; created if it does not exist.
+     */
+    public TiledLandMarkStore(double tileSize, int hotTiles, Path directory) throws IOException {
+        if (!(tileSize > 0))
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        if (hotTiles < 1)
+            throw new IllegalArgumentException("At least one tile must be kept in memory: " + hotTiles);
+        this.tileSize = tileSize;
+        this.hotTiles = hotTiles;
+        this.directory = Files.createDirectories(directory);
+        resident = new LinkedHashMap<>(16, 0.75f, true);
+        dirty = new HashSet<>();
+        tiles = new HashSet<>();
+        byId = new HashMap<>();
+        tileOf = new long[16];
+        slotOf = new int[16];
+        size = 0;
+    }
+
+    @Override
+    public synchronized LandMark get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return load(tileOf[index]).get(slotOf[index]);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends {@code landMark}; {@code index} must be the size of the store.
+     * @throws IllegalArgumentException if a landmark with the same id was already added.
+     */
+    @Override
+    public synchronized void add(int index, LandMark landMark) {
+        if (index != size)
+            throw new UnsupportedOperationException("A tiled map can only be appended to");
+        if (byId.containsKey(landMark.getId()))
+            throw new IllegalArgumentException("The map already has a landmark " + landMark.getId());
+        if (size == tileOf.length) {
+            tileOf = Arrays.copyOf(tileOf, size * 2);
+            slotOf = Arrays.copyOf(slotOf, size * 2);
+        }
+        place(size, landMark);
+        byId.put(landMark.getId(), size);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes every landmark, and the files of evicted tiles.
+     */
+    @Override
+    public synchronized void clear() {
+        for (long key : tiles) {
+            try {
+                Files.deleteIfExists(fileOf(key));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        resident.clear();
+        dirty.clear();
+        tiles.clear();
+        byId.clear();
+        size = 0;
+        extent = 0;
+        modCount++;
+    }
+
+    @Override
+    public synchronized LandMark findById(String id) {
+        Integer position = byId.get(id);
+        return position == null ? null : get(position);
+    }
+
+    /**
+     * Marks the tile of {@code landMark} as changed - or moves the landmark to another tile, if its first point
+     * left its tile. If the tile was evicted since {@code landMark} was read, it is read back and {@code landMark}
+     * replaces the copy in it.
+     */
+    @Override
+    public synchronized void moved(LandMark landMark) {
+        Integer position = byId.get(landMark.getId());
+        if (position == null)
+            return;
+        long key = tileOf[position];
+        List<LandMark> tile = load(key);
+        tile.set(slotOf[position], landMark);
+        dirty.add(key);
+        if (tileOf(landMark) != key) {
+            tile.set(slotOf[position], null);
+            place(position, landMark);
+        } else {
+            extent = Math.max(extent, extentOf(landMark));
+        }
+    }
+
+    @Override
+    public synchronized List<LandMark> findWithin(double x, double y, double radius) {
+        if (size == 0 || radius < 0)
+            return Collections.emptyList();
+        double reach = radius + extent; // a landmark within the radius has its first point within reach
+        int fromX = Math.max(tileCoordinate(x - reach), minTileX);
+        int toX = Math.min(tileCoordinate(x + reach), maxTileX);
+        int fromY = Math.max(tileCoordinate(y - reach), minTileY);
+        int toY = Math.min(tileCoordinate(y + reach), maxTileY);
+        List<Long> keys = new ArrayList<>();
+        if ((long) (toX - fromX + 1) * (toY - fromY + 1) <= tiles.size()) {
+            for (int tileX = fromX; tileX <= toX; tileX++) {
+                for (int tileY = fromY; tileY <= toY; tileY++) {
+                    if (tiles.contains(key(tileX, tileY)))
+                        keys.add(key(tileX, tileY));
+                }
+            }
+        } else { // the range covers more tiles than there are - visit those instead
+            for (long key : tiles) {
+                int tileX = (int) (key >> 32);
+                int tileY = (int) key;
+                if (tileX >= fromX && tileX <= toX && tileY >= fromY && tileY <= toY)
+                    keys.add(key);
+            }
+        }
+        List<SpatialGrid.Candidate> found = new ArrayList<>();
+        for (long key : keys) {
+            for (LandMark landMark : load(key)) {
+                if (landMark == null)
+                    continue;
+                double distance = SpatialGrid.distance(landMark.getCoordinates(), x, y);
+                if (distance <= radius)
+                    found.add(new SpatialGrid.Candidate(landMark, distance));
+            }
+        }
+        return SpatialGrid.sorted(found, found.size());
+    }
+
+    /**
+     * Searches ever larger radii until {@code k} landmarks are found, reading only the tiles in the last radius.
+     */
+    @Override
+    public synchronized List<LandMark> findNearest(double x, double y, int k) {
+        if (size == 0 || k <= 0)
+            return Collections.emptyList();
+        double farthest = Math.hypot(Math.max(Math.abs(x - minTileX * tileSize), Math.abs(x - (maxTileX + 1) * tileSize)),
+                Math.max(Math.abs(y - minTileY * tileSize), Math.abs(y - (maxTileY + 1) * tileSize))) + extent;
+        for (double radius = tileSize; ; radius *= 2) {
+            List<LandMark> found = findWithin(x, y, radius);
+            if (found.size() >= k || found.size() == size || radius >= farthest)
+                return found.size() > k ? new ArrayList<>(found.subList(0, k)) : found;
+        }
+    }
+
+    /**
+     * Puts {@code landMark} at the end of the tile of its first point, as the landmark at {@code position}.
+     */
+    private void place(int position, LandMark landMark) {
+        long key = tileOf(landMark);
+        List<LandMark> tile = load(key);
+        tileOf[position] = key;
+        slotOf[position] = tile.size();
+        tile.add(landMark);
+        dirty.add(key);
+        extent = Math.max(extent, extentOf(landMark));
+        int tileX = (int) (key >> 32);
+        int tileY = (int) key;
+        if (tiles.size() == 1 && tiles.contains(key)) {
+            minTileX = maxTileX = tileX;
+            minTileY = maxTileY = tileY;
+        } else {
+            minTileX = Math.min(minTileX, tileX);
+            maxTileX = Math.max(maxTileX, tileX);
+            minTileY = Math.min(minTileY, tileY);
+            maxTileY = Math.max(maxTileY, tileY);
+        }
+    }
+
+    /**
+     * @return the tile {@code key}, read from disk if it was evicted, or created if it does not exist.
+     * May evict the least recently used tile.
+     */
+    private List<LandMark> load(long key) {
+        List<LandMark> tile = resident.get(key);
+        if (tile != null)
+            return tile;
+        tile = tiles.add(key) ? new ArrayList<>() : read(key);
+        resident.put(key, tile);
+        Iterator<Map.Entry<Long, List<LandMark>>> eldest = resident.entrySet().iterator();
+        while (resident.size() > hotTiles) {
+            Map.Entry<Long, List<LandMark>> evicted = eldest.next();
+            if (dirty.remove(evicted.getKey()))
+                write(evicted.getKey(), evicted.getValue());
+            eldest.remove();
+        }
+        return tile;
+    }
+
+    private void write(long key, List<LandMark> tile) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(fileOf(key))))) {
+            out.writeInt(tile.size());
+            for (LandMark landMark : tile) {
+                out.writeBoolean(landMark != null);
+                if (landMark == null)
+                    continue;
+                out.writeUTF(landMark.getId());
+                out.writeUTF(landMark.getDescription());
+                PointCloud coordinates = landMark.getCoordinates();
+                out.writeInt(coordinates.size());
+                for (int i = 0; i < coordinates.size(); i++) {
+                    out.writeDouble(coordinates.getX(i));
+                    out.writeDouble(coordinates.getY(i));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write tile " + fileOf(key), e);
+        }
+    }
+
+    private List<LandMark> read(long key) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fileOf(key))))) {
+            int count = in.readInt();
+            List<LandMark> tile = new ArrayList<>(count);
+            for (int slot = 0; slot < count; slot++) {
+                if (!in.readBoolean()) {
+                    tile.add(null);
+                    continue;
+                }
+                String id = in.readUTF();
+                String description = in.readUTF();
+                int points = in.readInt();
+                PointCloud coordinates = new PointCloud(points);
+                for (int i = 0; i < points; i++)
+                    coordinates.add(in.readDouble(), in.readDouble());
+                tile.add(new LandMark(id, description, coordinates));
+            }
+            return tile;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read tile " + fileOf(key), e);
+        }
+    }
+
+    private Path fileOf(long key) {
+        return directory.resolve("tile_" + (int) (key >> 32) + "_" + (int) key + ".bin");
+    }
+
+    private long tileOf(LandMark landMark) {
+        PointCloud coordinates = landMark.getCoordinates();
+        if (coordinates.isEmpty())
+            return key(0, 0);
+        return key(tileCoordinate(coordinates.getX(0)), tileCoordinate(coordinates.getY(0)));
+    }
+
+    private static double extentOf(LandMark landMark) {
+        PointCloud coordinates = landMark.getCoordinates();
+        double farthest = 0;
+        for (int i = 1; i < coordinates.size(); i++)
+            farthest = Math.max(farthest, Math.hypot(coordinates.getX(i) - coordinates.getX(0), coordinates.getY(i) - coordinates.getY(0)));
+        return farthest;
+    }
+
+    private int tileCoordinate(double coordinate) {
+        double tile = Math.floor(coordinate / tileSize);
+        return (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, tile));
+    }
+
+    private static long key(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xffffffffL);
+    }
+}
@@ -1,8 +1,5 @@
 package bgu.spl.mics.application.objects;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Represents an object tracked by the LiDAR.
  * This object includes information about the tracked object's ID, description, 
@@ -12,13 +9,13 @@ public class TrackedObject {
     private String id;
     private int time;
     private String description;
-    private List<CloudPoint> coordinates;
+    private PointCloud coordinates;
 
     public TrackedObject(String id, int time, String description){
         this.id = id;
         this.time = time;
         this.description = description;
-        coordinates = new ArrayList<>();
+        coordinates = new PointCloud();
     }
 
     public int getTime() {
@@ -33,7 +30,7 @@ public class TrackedObject {
         return description;
     }
 
-    public List<CloudPoint> getCoordinates() {
+    public PointCloud getCoordinates() {
         return coordinates;
     }
 
@@ -41,6 +38,10 @@ public class TrackedObject {
         coordinates.add(cloudPoint);
     }
 
+    public void addCloudPoint(double x, double y){
+        coordinates.add(x, y);
+    }
+
     @Override
     public String toString() {
         return "{" + id +"," +time + "}";
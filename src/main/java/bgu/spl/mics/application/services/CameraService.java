@@ -57,25 +57,24 @@ public class CameraService extends MicroService {
          */
         @Override
         protected void initialize () {
-            camera.loadCameraData(filePath);
+            if (!camera.isLoaded()) // not loaded at startup
+                camera.loadCameraData(filePath);
 
             subscribeBroadcast(TickBroadcast.class, tick -> {
                 int currTick = tick.getCounter();
-                for (StampedDetectedObjects stampedObj : camera.getDetectedObjectList()){
-                    if (stampedObj.getTime() == currTick){
-                        for (DetectedObject obj : stampedObj.getDetectedObjects()){
-                            if (obj.getId().equals("ERROR")) {
-                                camera.setStatus(STATUS.ERROR);
-                                errorOutput.setError(obj.getDescription());
-                                errorOutput.setFaultySensor(camera.getCamera_key());
-                                statisticalFolder.setSystemRuntime(currTick);
-                                sendBroadcast(new CrashedBroadcast(this));
-                                terminate();
-                            }
+                StampedDetectedObjects stampedObj = camera.getDetectedObjects(currTick);
+                if (stampedObj != null){
+                    for (DetectedObject obj : stampedObj.getDetectedObjects()){
+                        if (obj.getId().equals("ERROR")) {
+                            camera.setStatus(STATUS.ERROR);
+                            errorOutput.setError(obj.getDescription());
+                            errorOutput.setFaultySensor(camera.getCamera_key());
+                            statisticalFolder.setSystemRuntime(currTick);
+                            sendBroadcast(new CrashedBroadcast(this));
+                            terminate();
                         }
-                        waitingList.put(currTick + camera.getFrequency(), stampedObj.getDetectedObjects());
-                        break;
                     }
+                    waitingList.put(currTick + camera.getFrequency(), stampedObj.getDetectedObjects());
                 }
                 if (waitingList.containsKey(currTick)){
                     StampedDetectedObjects stampedDetectedObjects = new StampedDetectedObjects(currTick- camera.getFrequency(),
@@ -1,7 +1,9 @@
 package bgu.spl.mics.application.services;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
+import bgu.spl.mics.Message;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
 import bgu.spl.mics.application.messages.PoseEvent;
@@ -19,10 +21,13 @@ import bgu.spl.mics.application.objects.StatisticalFolder;
  * transforming and updating the map with new landmarks.
  */
 public class FusionSlamService extends MicroService {
+    // Maximal number of messages taken from the queue at once, see handleBatch
+    private static final int BATCH_SIZE = 64;
     FusionSlam fusionSlam;
     int time;
     private static int serviceCounter;
     private CountDownLatch latch;
+    private boolean received; // poses or tracked objects arrived since the last process()
 
     /**
      * Constructor for FusionSlamService.
@@ -35,6 +40,8 @@ public class FusionSlamService extends MicroService {
         time = 0;
         serviceCounter = 0;
         this.latch = latch;
+        received = false;
+        setBatchSize(BATCH_SIZE);
     }
 
     public static void addCounter(){
@@ -65,30 +72,17 @@ public class FusionSlamService extends MicroService {
             time++;
         });
 
+        // Poses and tracked objects are only collected here, handleBatch processes them once per batch
         subscribeEvent(TrackedObjectsEvent.class, tracked -> {
-            fusionSlam.getAwaitingProcess().addAll(tracked.getTrackedObjects());
-            // Process only if tracked objects are already waiting
-            if (!fusionSlam.getAwaitingProcess().isEmpty()) {
-                fusionSlam.process();
-            }
-            if (serviceCounter <= 0 && fusionSlam.getAwaitingProcess().isEmpty()) {
-                messageBus.sendBroadcast(new TerminatedBroadcast(this));
-                terminateService();
-                fusionSlam.generateOutputFile();
-            }
+            fusionSlam.addTrackedObjects(tracked.getTrackedObjects());
+            received = true;
+            complete(tracked, true);
         });
 
         subscribeEvent(PoseEvent.class, pose -> {
             fusionSlam.addPoses(pose.getCurrPose());
-            // Process only if tracked objects are already waiting
-            if (!fusionSlam.getAwaitingProcess().isEmpty()) {
-                fusionSlam.process();
-            }
-            if (serviceCounter <= 0 && fusionSlam.getAwaitingProcess().isEmpty()) {
-                messageBus.sendBroadcast(new TerminatedBroadcast(this));
-                terminateService();
-                fusionSlam.generateOutputFile();
-            }
+            received = true;
+            complete(pose, true);
         });
 
         subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
@@ -114,8 +108,33 @@ public class FusionSlamService extends MicroService {
         latch.countDown();
     }
 
+    /**
+     * Dispatches a batch of messages, running {@link FusionSlam#process()} once for every run of
+     * consecutive PoseEvents and TrackedObjectsEvents instead of once per event.
+     * Any other message sees the map exactly as it would without batching.
+     */
+    @Override
+    protected void handleBatch(List<Message> batch) {
+        for (Message message : batch) {
+            if (!(message instanceof PoseEvent) && !(message instanceof TrackedObjectsEvent))
+                processReceived();
+            dispatch(message);
+        }
+        processReceived();
+    }
 
+    private void processReceived() {
+        if (!received || isTerminated())
+            return;
+        received = false;
+        // Process only if tracked objects are already waiting
+        if (!fusionSlam.getAwaitingProcess().isEmpty()) {
+            fusionSlam.process();
+        }
+        if (serviceCounter <= 0 && fusionSlam.getAwaitingProcess().isEmpty()) {
+            messageBus.sendBroadcast(new TerminatedBroadcast(this));
+            terminateService();
+            fusionSlam.generateOutputFile();
+        }
+    }
 }
-
-
-
@@ -56,6 +56,7 @@ public class LiDarService extends MicroService {
             //checks for objects to send:
             List<TrackedObject> readyToSendTrackedObjects = liDarWorkerTracker.canSendTrackedObjects(currTick);
             if (readyToSendTrackedObjects == null){
+                complete(detected, false);
                 sendBroadcast(new CrashedBroadcast(this));
                 terminate();
                 return;
@@ -66,6 +67,7 @@ public class LiDarService extends MicroService {
                 sendEvent(new TrackedObjectsEvent(readyToSendTrackedObjects));
 
             }
+            complete(detected, true);
         });
 
         subscribeBroadcast(TickBroadcast.class, tick -> {
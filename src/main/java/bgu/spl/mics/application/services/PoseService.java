@@ -46,7 +46,8 @@ public class PoseService extends MicroService {
          */
     @Override
     protected void initialize() {
-        gpsimu.loadPoseData();
+        if (!gpsimu.isLoaded()) // not loaded at startup
+            gpsimu.loadPoseData();
         
 
         subscribeBroadcast(TickBroadcast.class, tick -> {
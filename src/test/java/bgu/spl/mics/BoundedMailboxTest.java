@@ -0,0 +1,140 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.TickBroadcast;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedMailboxTest {
+
+    /**
+     * @pre A mailbox with capacity 2 that drops new messages is full.
+     * @post The new message is dropped and the queued messages are kept.
+     * @inv The mailbox never holds more messages than its capacity.
+     */
+    @Test
+    void dropNewest() {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.DROP_NEWEST);
+        TickBroadcast first = new TickBroadcast(1);
+        TickBroadcast second = new TickBroadcast(2);
+        assertTrue(mailbox.deliver(first));
+        assertTrue(mailbox.deliver(second));
+        assertFalse(mailbox.deliver(new TickBroadcast(3)), "A message added to a full mailbox should be dropped.");
+        assertThrows(IllegalStateException.class, () -> mailbox.add(new TickBroadcast(4)), "add should keep the Queue contract.");
+        assertEquals(2, mailbox.size());
+        assertEquals(first, mailbox.poll());
+        assertEquals(second, mailbox.poll());
+        assertEquals(1, mailbox.getDroppedCount());
+    }
+
+    /**
+     * @pre A mailbox with capacity 2 that drops old messages is full.
+     * @post The oldest message is dropped, and handed to the drop listener, and the new message is queued last.
+     * @inv The mailbox never holds more messages than its capacity.
+     */
+    @Test
+    void dropOldest() {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.DROP_OLDEST);
+        List<Message> dropped = new ArrayList<>();
+        mailbox.setDropListener(dropped::add);
+        TickBroadcast first = new TickBroadcast(1);
+        TickBroadcast second = new TickBroadcast(2);
+        TickBroadcast third = new TickBroadcast(3);
+        mailbox.deliver(first);
+        mailbox.deliver(second);
+        assertTrue(mailbox.deliver(third));
+        assertEquals(Collections.singletonList(first), dropped);
+        assertEquals(2, mailbox.size());
+        assertEquals(second, mailbox.poll(), "The oldest message should have been dropped.");
+        assertEquals(third, mailbox.poll());
+    }
+
+    /**
+     * @pre A mailbox with capacity 2 coalescing ticks holds an event and a tick.
+     * @post A new tick replaces the queued tick, and the event is kept.
+     * @inv The mailbox never holds more messages than its capacity.
+     */
+    @Test
+    void coalesceBroadcasts() {
+        class QueuedEvent implements Event<Boolean> { }
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.COALESCE, Collections.singleton(TickBroadcast.class));
+        QueuedEvent event = new QueuedEvent();
+        TickBroadcast latest = new TickBroadcast(2);
+        mailbox.deliver(event);
+        mailbox.deliver(new TickBroadcast(1));
+        assertTrue(mailbox.deliver(latest));
+        assertEquals(event, mailbox.poll(), "Events should never be coalesced.");
+        assertEquals(latest, mailbox.poll(), "The old tick should have been replaced by the new one.");
+        assertEquals(2, mailbox.getHighWaterMark());
+    }
+
+    /**
+     * @pre A full mailbox with capacity 2 coalescing ticks holds a broadcast of another type and a tick.
+     * @post A new broadcast of the other type replaces nothing - it waits for room, as in BLOCK.
+     */
+    @Test
+    void coalesceOnlyChosenTypes() throws InterruptedException {
+        class Termination implements Broadcast { }
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.COALESCE, Collections.singleton(TickBroadcast.class));
+        Termination first = new Termination();
+        TickBroadcast tick = new TickBroadcast(1);
+        Termination second = new Termination();
+        mailbox.deliver(first);
+        mailbox.deliver(tick);
+        Thread sender = new Thread(() -> mailbox.deliver(second));
+        sender.start();
+        Thread.sleep(50);
+        assertTrue(sender.isAlive(), "A broadcast of a type that is not coalesced should wait for room.");
+        assertEquals(first, mailbox.poll());
+        sender.join(1000);
+        assertEquals(tick, mailbox.poll());
+        assertEquals(second, mailbox.poll(), "Every broadcast of a type that is not coalesced should be kept.");
+        assertEquals(0, mailbox.getDroppedCount());
+    }
+
+    /**
+     * @pre A mailbox with capacity 3 that drops new messages holds one message.
+     * @post A batch of 4 fills the mailbox in order; the messages that did not fit are dropped and nulled.
+     */
+    @Test
+    void addBatch() {
+        BoundedMailbox mailbox = new BoundedMailbox(3, OverflowPolicy.DROP_NEWEST);
+        TickBroadcast queued = new TickBroadcast(0);
+        mailbox.deliver(queued);
+        Message[] batch = {new TickBroadcast(1), new TickBroadcast(2), new TickBroadcast(3), new TickBroadcast(4)};
+        Message first = batch[0];
+        Message second = batch[1];
+        assertEquals(2, mailbox.addBatch(batch, 0, 4));
+        assertNull(batch[2], "Dropped messages should be nulled.");
+        assertNull(batch[3]);
+        assertEquals(queued, mailbox.poll());
+        assertEquals(first, mailbox.poll(), "The batch should be queued in order, after the queued message.");
+        assertEquals(second, mailbox.poll());
+        assertNull(mailbox.poll());
+        assertEquals(2, mailbox.getDroppedCount());
+        assertEquals(3, mailbox.getHighWaterMark());
+    }
+
+    /**
+     * @pre A blocking mailbox with capacity 1 is full and a sender waits for room.
+     * @post Closing the mailbox releases the sender, whose message is dropped.
+     */
+    @Test
+    void closeReleasesBlockedSender() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(1, OverflowPolicy.BLOCK);
+        mailbox.deliver(new TickBroadcast(1));
+        boolean[] added = {true};
+        Thread sender = new Thread(() -> added[0] = mailbox.deliver(new TickBroadcast(2)));
+        sender.start();
+        Thread.sleep(50);
+        assertTrue(sender.isAlive(), "The sender should wait while the mailbox is full.");
+        mailbox.close();
+        sender.join(1000);
+        assertFalse(sender.isAlive(), "Closing the mailbox should release the sender.");
+        assertFalse(added[0], "The message of a released sender should be dropped.");
+    }
+}
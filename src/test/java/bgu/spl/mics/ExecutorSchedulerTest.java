@@ -0,0 +1,55 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutorSchedulerTest {
+
+    private static class FailingBroadcast implements Broadcast { }
+
+    /**
+     * @pre A micro-service whose initialize throws, and one whose callback throws, on the executor scheduler.
+     * @post Both are terminated, and awaitTermination returns instead of waiting forever.
+     */
+    @Test
+    void failingServicesTerminate() throws InterruptedException {
+        ExecutorScheduler scheduler = new ExecutorScheduler(2);
+        MicroService failsToInitialize = new MicroService("fails-to-initialize") {
+            @Override
+            protected void initialize() {
+                throw new IllegalStateException("initialize failed");
+            }
+        };
+        CountDownLatch subscribed = new CountDownLatch(1);
+        MicroService failsInCallback = new MicroService("fails-in-callback") {
+            @Override
+            protected void initialize() {
+                subscribeBroadcast(FailingBroadcast.class, broadcast -> {
+                    throw new IllegalStateException("callback failed");
+                });
+                subscribed.countDown();
+            }
+        };
+        scheduler.start(failsToInitialize);
+        scheduler.start(failsInCallback);
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        MessageBusImpl.getInstance().sendBroadcast(new FailingBroadcast());
+
+        Thread waiter = new Thread(() -> {
+            try {
+                scheduler.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive(), "awaitTermination should return once the failing services were terminated.");
+        assertTrue(failsToInitialize.isTerminated());
+        assertTrue(failsInCallback.isTerminated());
+    }
+}
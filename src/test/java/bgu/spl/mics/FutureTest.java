@@ -0,0 +1,96 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FutureTest {
+
+    /**
+     * @pre An unresolved future with continuations registered before and after it is resolved.
+     * @post Every continuation runs exactly once, with the result, and dependent futures hold the mapped result.
+     * @inv A resolved future never changes its result.
+     */
+    @Test
+    void continuations() {
+        Future<Integer> future = new Future<>();
+        List<Integer> seen = new ArrayList<>();
+        Future<String> mapped = future.thenApply(result -> "r" + result);
+        Future<Void> accepted = future.thenAccept(seen::add);
+        assertFalse(mapped.isDone(), "A continuation should not run before the future is resolved.");
+
+        future.resolve(7);
+        future.resolve(8);
+        assertEquals(Integer.valueOf(7), future.get(), "Only the first resolve should have an effect.");
+        assertEquals("r7", mapped.get());
+        assertTrue(accepted.isDone(), "A future resolved with null should be done.");
+
+        future.thenAccept(seen::add); // already resolved - runs right away
+        assertEquals(2, seen.size());
+        assertEquals(Integer.valueOf(7), seen.get(1));
+    }
+
+    /**
+     * @pre A future resolved by another thread, and a waiting reader.
+     * @post The blocking get, the timed get and the CompletableFuture bridge all see the result.
+     * @inv A timed get of an unresolved future returns null after the timeout.
+     */
+    @Test
+    void resolveFromAnotherThread() throws Exception {
+        Future<Boolean> future = new Future<>();
+        CompletableFuture<Boolean> completable = future.toCompletableFuture();
+        assertNull(future.get(10, TimeUnit.MILLISECONDS), "An unresolved future should time out.");
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread resolver = new Thread(() -> {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            future.resolve(true);
+        });
+        resolver.start();
+        started.countDown();
+        assertEquals(Boolean.TRUE, future.get(), "get should wait for the result.");
+        assertEquals(Boolean.TRUE, future.get(1, TimeUnit.SECONDS));
+        assertEquals(Boolean.TRUE, completable.get(1, TimeUnit.SECONDS), "The bridge should be completed as well.");
+        resolver.join();
+    }
+
+    /**
+     * @pre A continuation that throws, and a future that fails.
+     * @post The failure propagates to every dependent future and to the CompletableFuture bridge.
+     * @inv A failed future never becomes resolved with a result.
+     */
+    @Test
+    void failurePropagates() {
+        Future<Integer> future = new Future<>();
+        Future<Integer> thrown = future.thenApply(result -> {
+            throw new IllegalStateException("bad " + result);
+        });
+        Future<String> afterThrown = thrown.thenApply(result -> "r" + result);
+        future.resolve(1);
+        assertTrue(thrown.isFailed(), "A future whose function threw should fail.");
+        assertTrue(afterThrown.isFailed(), "A failure should reach the dependents of the failed future.");
+        CompletionException e = assertThrows(CompletionException.class, afterThrown::get);
+        assertEquals("bad 1", e.getCause().getMessage());
+
+        Future<Integer> failed = new Future<>();
+        CompletableFuture<Integer> completable = failed.toCompletableFuture();
+        failed.fail(new IllegalArgumentException("cause"));
+        failed.resolve(2);
+        assertTrue(failed.isFailed(), "resolve after fail should have no effect.");
+        assertThrows(CompletionException.class, () -> failed.get(1, TimeUnit.SECONDS));
+        ExecutionException bridged = assertThrows(ExecutionException.class, completable::get);
+        assertTrue(bridged.getCause() instanceof IllegalArgumentException, "The bridge should fail with the cause.");
+    }
+}
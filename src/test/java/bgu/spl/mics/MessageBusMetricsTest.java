@@ -0,0 +1,65 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.Camera;
+import bgu.spl.mics.application.services.CameraService;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBusMetricsTest {
+
+    /**
+     * @pre An empty histogram.
+     * @post Percentiles are reported within the precision of a bucket, and never above the max.
+     * @inv The count and mean match the recorded values exactly.
+     */
+    @Test
+    void histogramPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50), "An empty histogram should report 0.");
+        for (long value = 1; value <= 1000; value++)
+            histogram.record(value * 1000);
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMean(), 1e-6);
+        assertEquals(1000000, histogram.getMax());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500000 && median <= 500000 * 9 / 8, "The median should be within a bucket: " + median);
+        assertEquals(1000000, histogram.getValueAtPercentile(100), "The top percentile should be the max.");
+        for (long value = 0; value < 1L << 40; value = value * 3 + 1)
+            assertTrue(Histogram.highestInBucket(Histogram.indexOf(value)) >= value, "A value should fit in its bucket.");
+    }
+
+    /**
+     * @pre Metrics are enabled and a registered service subscribes to a broadcast.
+     * @post The send and the time in the queue of the broadcast are recorded under its type.
+     * @inv Messages are delivered unchanged while metrics are enabled.
+     */
+    @Test
+    void recordsSendAndQueueLatency() throws InterruptedException {
+        MessageBusImpl messageBus = MessageBusImpl.getInstance();
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        CameraService service = new CameraService(new Camera(9, 1), new CountDownLatch(1));
+        messageBus.register(service);
+        messageBus.subscribeBroadcast(TickBroadcast.class, service);
+        messageBus.setMetrics(metrics);
+        try {
+            TickBroadcast tick = new TickBroadcast(1);
+            messageBus.sendBroadcast(tick);
+            assertEquals(tick, messageBus.awaitMessage(service), "The broadcast itself should be delivered.");
+        } finally {
+            messageBus.setMetrics(null);
+            messageBus.unregister(service);
+        }
+        assertEquals(1, metrics.getSentCount());
+        Map<String, Object> tick = (Map<String, Object>) ((Map<String, Object>) metrics.snapshot().get("messages"))
+                .get("TickBroadcast");
+        assertEquals(1L, tick.get("sent"));
+        assertEquals(1L, ((Map<String, Object>) tick.get("queueLatencyNanos")).get("count"),
+                "The time in the queue should be recorded once.");
+        assertTrue(metrics.getReport().contains("TickBroadcast"));
+    }
+}
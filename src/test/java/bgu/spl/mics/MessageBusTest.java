@@ -7,6 +7,7 @@ import bgu.spl.mics.application.services.CameraService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import static org.junit.jupiter.api.Assertions.*;
 import bgu.spl.mics.application.messages.PoseEvent;
@@ -130,6 +131,153 @@ class MessageBusTest {
     }
 
 
+    /**
+     * @pre Two registered services subscribe to the same event type.
+     * @post Events are handed to the subscribers in turn, and an unregistered subscriber is skipped.
+     * @inv Every sent event is delivered to exactly one service.
+     */
+    @Test
+    void sendEventRoundRobin() {
+        class RoundRobinEvent implements Event<Boolean> { }
+        CameraService first = new CameraService(new Camera(4, 1), latch);
+        CameraService second = new CameraService(new Camera(5, 1), latch);
+        messageBus.register(first);
+        messageBus.register(second);
+        messageBus.subscribeEvent(RoundRobinEvent.class, first);
+        messageBus.subscribeEvent(RoundRobinEvent.class, second);
+
+        for (int i = 0; i < 4; i++)
+            assertNotNull(messageBus.sendEvent(new RoundRobinEvent()));
+        assertEquals(2, messageBus.getServiceMap().get(first).size(), "Each subscriber should get half of the events.");
+        assertEquals(2, messageBus.getServiceMap().get(second).size(), "Each subscriber should get half of the events.");
+
+        messageBus.unregister(first);
+        for (int i = 0; i < 3; i++)
+            assertNotNull(messageBus.sendEvent(new RoundRobinEvent()));
+        assertEquals(5, messageBus.getServiceMap().get(second).size(), "The remaining subscriber should get all new events.");
+
+        messageBus.unregister(second);
+        assertNull(messageBus.sendEvent(new RoundRobinEvent()), "No future should be returned without subscribers.");
+    }
+
+    /**
+     * @pre Two registered services subscribe to the same event type, one of them also to a broadcast type.
+     * @post A batch of events is split between the subscribers in turn, keeping the order of the batch,
+     *       and a batch of broadcasts reaches its subscriber in order.
+     * @inv A future is returned for every event with a subscriber, and null for an event without one.
+     */
+    @Test
+    void sendBatches() throws InterruptedException {
+        class BatchEvent implements Event<Boolean> { }
+        class UnsubscribedEvent implements Event<Boolean> { }
+        CameraService first = new CameraService(new Camera(6, 1), latch);
+        CameraService second = new CameraService(new Camera(7, 1), latch);
+        messageBus.register(first);
+        messageBus.register(second);
+        messageBus.subscribeEvent(BatchEvent.class, first);
+        messageBus.subscribeEvent(BatchEvent.class, second);
+        messageBus.subscribeBroadcast(TickBroadcast.class, first);
+
+        List<Event<Boolean>> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            events.add(new BatchEvent());
+        events.add(new UnsubscribedEvent());
+        List<Future<Boolean>> futures = messageBus.sendEvents(events);
+        assertEquals(5, futures.size(), "A future slot should be returned for every event.");
+        for (int i = 0; i < 4; i++)
+            assertNotNull(futures.get(i), "Subscribed events should get a future.");
+        assertNull(futures.get(4), "An event without subscribers should get a null future.");
+
+        Message firstOfFirst = messageBus.awaitMessage(first);
+        Message firstOfSecond = messageBus.awaitMessage(second);
+        assertTrue(firstOfFirst == events.get(0) || firstOfFirst == events.get(1), "Events should be delivered in batch order.");
+        assertTrue(firstOfSecond == events.get(0) || firstOfSecond == events.get(1), "Events should be delivered in batch order.");
+        assertNotEquals(firstOfFirst, firstOfSecond, "Each event should be delivered to one service.");
+
+        List<TickBroadcast> ticks = new ArrayList<>();
+        ticks.add(new TickBroadcast(1));
+        ticks.add(new TickBroadcast(2));
+        messageBus.sendBroadcasts(ticks);
+        messageBus.awaitMessage(first); //the second event of the batch
+        assertEquals(ticks.get(0), messageBus.awaitMessage(first), "Broadcasts should be delivered in batch order.");
+        assertEquals(ticks.get(1), messageBus.awaitMessage(first), "Broadcasts should be delivered in batch order.");
+
+        messageBus.unregister(first);
+        messageBus.unregister(second);
+    }
+
+    /**
+     * @pre A registered service has a queue of capacity 1 that drops new messages, and metrics are enabled.
+     * @post An event the full queue drops has its future resolved with null - alone or in a batch -
+     *       and the drops are counted.
+     */
+    @Test
+    void droppedEventsResolveTheirFutures() {
+        class DroppedEvent implements Event<Boolean> { }
+        MessageBusMetrics metrics = new MessageBusMetrics();
+        messageBus.setMetrics(metrics);
+        messageBus.setMailboxSettings(new MailboxSettings(1, OverflowPolicy.DROP_NEWEST, null));
+        CameraService full = new CameraService(new Camera(8, 1), latch);
+        messageBus.register(full);
+        messageBus.setMailboxSettings(MailboxSettings.UNBOUNDED);
+        messageBus.subscribeEvent(DroppedEvent.class, full);
+
+        Future<Boolean> queued = messageBus.sendEvent(new DroppedEvent());
+        Future<Boolean> dropped = messageBus.sendEvent(new DroppedEvent());
+        assertFalse(queued.isDone());
+        assertTrue(dropped.isDone(), "The future of a dropped event should be resolved.");
+        assertNull(dropped.get());
+        List<Event<Boolean>> batch = new ArrayList<>();
+        batch.add(new DroppedEvent());
+        assertTrue(messageBus.sendEvents(batch).get(0).isDone(), "The future of a dropped event should be resolved.");
+        assertEquals(2, metrics.getDroppedCount());
+
+        messageBus.unregister(full);
+        messageBus.setMetrics(null);
+    }
+
+    /**
+     * @pre A service on its own thread completes every event it receives.
+     * @post Every future of a long stream of events is resolved, and nothing about the completed events
+     *       is kept by the message-bus.
+     * @inv The heap does not grow with the number of events sent.
+     */
+    @Test
+    void soakCompletedEvents() throws InterruptedException {
+        class SoakEvent implements Event<Boolean> { }
+        MicroService echo = new MicroService("Echo") {
+            @Override
+            protected void initialize() {
+                subscribeEvent(SoakEvent.class, e -> complete(e, true));
+            }
+        };
+        Thread echoThread = new Thread(echo);
+        echoThread.start();
+        while (!messageBus.getServiceMap().containsKey(echo) || messageBus.sendEvent(new SoakEvent()) == null)
+            Thread.sleep(1);
+
+        int unresolvedBefore = messageBus.getUnresolvedEventCount(); //events taken by other tests may still be referenced
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = 0;
+        for (int chunk = 0; chunk < 500; chunk++) {
+            Future<Boolean> last = null;
+            for (int i = 0; i < 1000; i++)
+                last = messageBus.sendEvent(new SoakEvent());
+            assertEquals(Boolean.TRUE, last.get(10, TimeUnit.SECONDS), "Every event should be completed.");
+            if (chunk == 10) { //after warm-up
+                System.gc();
+                heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            }
+        }
+        echoThread.interrupt();
+        echoThread.join();
+
+        assertTrue(messageBus.getUnresolvedEventCount() <= unresolvedBefore, "Completed events should not be kept by the message-bus.");
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        assertTrue(heapAfter - heapBefore < 16 * 1024 * 1024, "The heap should not grow with the number of events.");
+    }
+
     @Test
     void register() {
         CameraService service2 = new CameraService(new Camera(2, 0), latch); // Example MicroServices
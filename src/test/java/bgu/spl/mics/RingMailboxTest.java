@@ -0,0 +1,92 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.TickBroadcast;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingMailboxTest {
+
+    /**
+     * @pre An empty ring mailbox with capacity 4 that drops new messages.
+     * @post Messages are taken in the order they were added, and a message added while full is dropped.
+     * @inv The mailbox never holds more messages than its capacity.
+     */
+    @Test
+    void fifoAndCapacity() {
+        RingMailbox mailbox = new RingMailbox(3, OverflowPolicy.DROP_NEWEST); // rounded up to 4
+        List<TickBroadcast> ticks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ticks.add(new TickBroadcast(i));
+            assertTrue(mailbox.deliver(ticks.get(i)));
+        }
+        assertFalse(mailbox.deliver(new TickBroadcast(4)), "A message added to a full mailbox should be dropped.");
+        assertThrows(IllegalStateException.class, () -> mailbox.add(new TickBroadcast(5)), "add should keep the Queue contract.");
+        assertEquals(4, mailbox.size());
+        for (int round = 0; round < 3; round++) { // wrap around the ring a few times
+            for (int i = 0; i < 4; i++)
+                assertEquals(ticks.get(i), mailbox.poll(), "Messages should be taken in order.");
+            assertNull(mailbox.poll());
+            for (TickBroadcast tick : ticks)
+                mailbox.deliver(tick);
+        }
+        assertEquals(4, mailbox.getHighWaterMark());
+        assertEquals(1, mailbox.getDroppedCount());
+    }
+
+    /**
+     * @pre A ring mailbox with capacity 4 that drops new messages holds one message.
+     * @post A batch of 5 fills the free slots in order; the messages that did not fit are dropped and nulled.
+     */
+    @Test
+    void addBatch() {
+        RingMailbox mailbox = new RingMailbox(4, OverflowPolicy.DROP_NEWEST);
+        mailbox.deliver(new TickBroadcast(0));
+        Message[] batch = new Message[5];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = new TickBroadcast(i + 1);
+        assertEquals(3, mailbox.addBatch(batch, 0, 5));
+        assertNull(batch[3]);
+        assertNull(batch[4]);
+        for (int i = 0; i < 4; i++)
+            assertEquals(i, ((TickBroadcast) mailbox.poll()).getCounter(), "Messages should be taken in order.");
+        assertEquals(2, mailbox.getDroppedCount());
+    }
+
+    /**
+     * @pre Several senders add messages to a small blocking ring mailbox while its consumer takes them.
+     * @post The consumer takes every message exactly once, and the messages of each sender in the order it sent them.
+     */
+    @Test
+    void concurrentSenders() throws InterruptedException {
+        RingMailbox mailbox = new RingMailbox(8, OverflowPolicy.BLOCK);
+        int senders = 4;
+        int perSender = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            int sender = s;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perSender; i++)
+                    mailbox.deliver(new TickBroadcast(sender * perSender + i));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        int[] last = new int[senders];
+        Arrays.fill(last, -1);
+        for (int taken = 0; taken < senders * perSender; taken++) {
+            int counter = ((TickBroadcast) mailbox.take()).getCounter();
+            int sender = counter / perSender;
+            assertTrue(counter % perSender > last[sender], "Messages of a sender should be taken in order.");
+            last[sender] = counter % perSender;
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertNull(mailbox.poll(), "No message should be left.");
+        assertEquals(0, mailbox.getDroppedCount());
+    }
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -81,5 +82,47 @@ class CameraTest {
         assertEquals(1, detectedList.get(1).getTime(), "Second entry should have time 1 (duplicate time).");
         assertEquals(2, detectedList.get(2).getTime(), "Third entry should have time 2.");
         assertTrue(detectedList.get(2).getDetectedObjects().isEmpty(), "Third entry should have an empty detected objects list.");
+        assertTrue(camera.isLoaded());
+        assertEquals(detectedList.get(0), camera.getDetectedObjects(1), "The first entry of a time should be found by its time.");
+        assertEquals(detectedList.get(2), camera.getDetectedObjects(2));
+        assertNull(camera.getDetectedObjects(3));
+    }
+
+    /**
+     * Test for reading the file of all the cameras once and giving each camera its own detections.
+     * @pre A JSON file with the detections of two cameras.
+     * @post Each camera gets only its own detections, and its latest time.
+     */
+    @Test
+    void loadStampedObjects() throws IOException {
+        String filePath = "camera_data.json";
+        try (FileWriter writer = new FileWriter(filePath)) {
+            writer.write("{\"camera1\": [{\"time\": 3, \"detectedObjects\": [{\"id\": \"obj1\", \"description\": \"object 1\"}]}],"
+                    + " \"camera2\": [{\"time\": 1, \"detectedObjects\": []}, {\"time\": 2, \"detectedObjects\": []}]}");
+        }
+        Map<String, List<StampedDetectedObjects>> cameraData = Camera.readCameraData(filePath);
+        Camera other = new Camera(2, 1);
+        camera.loadStampedObjects(cameraData.get(camera.getCamera_key()));
+        other.loadStampedObjects(cameraData.get(other.getCamera_key()));
+
+        assertEquals(1, camera.getDetectedObjectList().size());
+        assertEquals("obj1", camera.getDetectedObjectList().get(0).getDetectedObjects().get(0).getId());
+        assertEquals(8, camera.getMaxTime(), "The latest time should be the last detection plus the frequency.");
+        assertEquals(2, other.getDetectedObjectList().size());
+        assertEquals(3, other.getMaxTime());
+        assertTrue(camera.isLoaded() && other.isLoaded());
+    }
+
+    /**
+     * @pre A camera file that does not exist.
+     * @post Reading it fails, and the camera is left unloaded, so its service can load it again.
+     */
+    @Test
+    void loadMissingCameraData() {
+        String filePath = "missing_camera_data.json";
+        assertNull(Camera.readCameraData(filePath));
+        camera.loadCameraData(filePath);
+        assertFalse(camera.isLoaded(), "A camera whose file could not be read should not be marked loaded.");
+        assertTrue(camera.getDetectedObjectList().isEmpty());
     }
 }
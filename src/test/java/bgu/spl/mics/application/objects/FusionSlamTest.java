@@ -1,10 +1,17 @@
 package bgu.spl.mics.application.objects;
 
+import com.google.gson.Gson;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -90,6 +97,404 @@ class FusionSlamTest {
     }
 
 
+    /**
+     * Test for findMatchingLandMark.
+     * @pre Several landmarks are added to FusionSlam, two of them with the same ID.
+     * @post A tracked object is matched to the first landmark with its ID, or to none.
+     * @post The landmarks keep the order they were added in, also after the list is changed.
+     */
+    @Test
+    void findMatchingLandMark() {
+        for (int i = 0; i < 100; i++)
+            fusionSlam.addLandMark(new LandMark("obj" + i, "Landmark " + i));
+        LandMark duplicate = new LandMark("obj5", "Duplicate");
+        fusionSlam.addLandMark(duplicate);
+
+        assertEquals("Landmark 42", fusionSlam.findMatchingLandMark(new TrackedObject("obj42", 1, "")).getDescription());
+        assertEquals("Landmark 5", fusionSlam.findMatchingLandMark(new TrackedObject("obj5", 1, "")).getDescription(),
+                "The first landmark with the ID should be matched.");
+        assertNull(fusionSlam.findMatchingLandMark(new TrackedObject("obj100", 1, "")));
+        assertEquals("obj0", fusionSlam.getLandmarks().get(0).getId(), "Landmarks should keep their order.");
+        assertSame(duplicate, fusionSlam.getLandmarks().get(100), "Landmarks should keep their order.");
+
+        fusionSlam.getLandmarks().remove(5);
+        assertSame(duplicate, fusionSlam.findMatchingLandMark(new TrackedObject("obj5", 1, "")),
+                "The next landmark with the ID should be matched after a removal.");
+        fusionSlam.getLandmarks().clear();
+        assertNull(fusionSlam.findMatchingLandMark(new TrackedObject("obj42", 1, "")));
+    }
+
+    /**
+     * Test for getPose.
+     * @pre Poses with gaps between their times, added out of order, beyond the initial capacity of the store.
+     * @post Every pose is found by its time, and times without a pose give null.
+     * @post With a retention window, old poses are dropped unless an awaiting tracked object needs them.
+     */
+    @Test
+    void getPoseWithGapsAndRetention() {
+        for (int time = 300; time >= 0; time -= 3)
+            fusionSlam.addPoses(new Pose(time, time, 0, 0));
+        assertEquals(101, fusionSlam.getPoses().size());
+        for (int time = 0; time <= 300; time++) {
+            Pose pose = fusionSlam.getPose(time);
+            if (time % 3 == 0)
+                assertEquals(time, pose.getTime(), "The pose at a tick should be found.");
+            else
+                assertNull(pose, "A tick without a pose should give null.");
+        }
+        assertNull(fusionSlam.getPose(301));
+
+        fusionSlam.getAwaitingProcess().add(new TrackedObject("obj1", 151, "No pose at this tick yet"));
+        fusionSlam.setPoseRetention(10);
+        try {
+            fusionSlam.process();
+        } finally {
+            fusionSlam.setPoseRetention(0);
+            fusionSlam.getAwaitingProcess().clear();
+        }
+        assertNull(fusionSlam.getPose(0), "Poses before the window should be dropped.");
+        assertNull(fusionSlam.getPose(150), "Poses before the ones still needed should be dropped.");
+        assertNotNull(fusionSlam.getPose(153), "Poses an awaiting object may still need should be kept.");
+        assertNotNull(fusionSlam.getPose(294), "Poses in the window should be kept.");
+    }
+
+    /**
+     * Test for pose retention shorter than tracked objects take to arrive.
+     * @pre Poses dropped by a short retention window, then tracked objects of a dropped time and of a kept one.
+     * @post The object whose pose was dropped is skipped instead of waiting forever; the other one is processed.
+     */
+    @Test
+    void trackedObjectArrivingAfterItsPoseWasDropped() {
+        fusionSlam.getAwaitingProcess().clear();
+        for (int time = 1; time <= 10; time++)
+            fusionSlam.addPoses(new Pose(time, 0, 0, 0));
+        fusionSlam.setPoseRetention(3);
+        try {
+            fusionSlam.process();
+            assertNull(fusionSlam.getPose(2));
+            TrackedObject late = new TrackedObject("late", 2, "");
+            late.addCloudPoint(1.0, 1.0);
+            TrackedObject onTime = new TrackedObject("onTime", 9, "");
+            onTime.addCloudPoint(1.0, 1.0);
+            assertEquals(1, fusionSlam.addTrackedObjects(Arrays.asList(late, onTime)));
+            assertEquals(1, fusionSlam.getAwaitingProcess().size(), "Only the object whose pose is kept should wait.");
+            assertThrows(IllegalArgumentException.class, () -> fusionSlam.getAwaitingProcess().add(late));
+            fusionSlam.process();
+            assertTrue(fusionSlam.getAwaitingProcess().isEmpty(), "Nothing should be left waiting forever.");
+            assertNotNull(fusionSlam.getLandmarks().findById("onTime"));
+            assertNull(fusionSlam.getLandmarks().findById("late"));
+        } finally {
+            fusionSlam.setPoseRetention(0);
+            fusionSlam.getAwaitingProcess().clear();
+        }
+    }
+
+    /**
+     * Test for process.
+     * @pre Tracked objects are added before the poses of their times arrive.
+     * @post Only objects whose pose arrived are processed, in the order they were added; the rest keep waiting.
+     */
+    @Test
+    void processReleasesObjectsWhenTheirPoseArrives() {
+        fusionSlam.getAwaitingProcess().clear();
+        fusionSlam.addPoses(new Pose(1, 0, 0, 0));
+        String[] ids = {"late", "early", "ready", "never"};
+        int[] times = {3, 2, 1, 4};
+        for (int i = 0; i < ids.length; i++) {
+            TrackedObject trackedObject = new TrackedObject(ids[i], times[i], "");
+            trackedObject.addCloudPoint(new CloudPoint(1.0, 1.0));
+            fusionSlam.getAwaitingProcess().add(trackedObject);
+        }
+        fusionSlam.addPoses(new Pose(2, 0, 0, 0));
+        fusionSlam.addPoses(new Pose(3, 0, 0, 0));
+        fusionSlam.process();
+
+        assertEquals(3, fusionSlam.getLandmarks().size());
+        assertEquals("late", fusionSlam.getLandmarks().get(0).getId(), "Ready objects should be processed in arrival order.");
+        assertEquals("early", fusionSlam.getLandmarks().get(1).getId(), "Ready objects should be processed in arrival order.");
+        assertEquals("ready", fusionSlam.getLandmarks().get(2).getId(), "Ready objects should be processed in arrival order.");
+        assertEquals(1, fusionSlam.getAwaitingProcess().size(), "An object without a pose should keep waiting.");
+        assertEquals(4, fusionSlam.getAwaitingProcess().getOldestTime());
+        fusionSlam.getAwaitingProcess().clear();
+    }
+
+    /**
+     * Test for parallel fusion.
+     * @pre A batch of tracked objects, large enough to be fused in parallel, several of them per landmark id.
+     * @post The landmarks are the same, in the same order and with the same coordinates, as sequential fusion builds.
+     */
+    @Test
+    void parallelFusionMatchesSequential() {
+        List<LandMark> sequential = fuseBatch(0);
+        List<LandMark> parallel = fuseBatch(4);
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getId(), parallel.get(i).getId(), "Landmarks should be added in the same order.");
+            PointCloud expected = sequential.get(i).getCoordinates();
+            PointCloud actual = parallel.get(i).getCoordinates();
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getX(j), actual.getX(j), "Landmark " + sequential.get(i).getId() + " should be fused the same way.");
+                assertEquals(expected.getY(j), actual.getY(j), "Landmark " + sequential.get(i).getId() + " should be fused the same way.");
+            }
+        }
+    }
+
+    private List<LandMark> fuseBatch(int parallelism) {
+        return fuseBatches(parallelism, 1);
+    }
+
+    private List<LandMark> fuseBatches(int parallelism, int rounds) {
+        fusionSlam.getLandmarks().clear();
+        fusionSlam.getPoses().clear();
+        fusionSlam.getAwaitingProcess().clear();
+        fusionSlam.setParallelism(parallelism);
+        try {
+            fusionSlam.addLandMark(new LandMark("obj3", "Existing", Arrays.asList(new CloudPoint(1.0, 1.0))));
+            for (int time = 1; time <= 10; time++)
+                fusionSlam.addPoses(new Pose(time, time * 0.5f, -time, time * 7));
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < 200; i++) {
+                    TrackedObject trackedObject = new TrackedObject("obj" + (i * 7 % 23), 1 + i % 10, "");
+                    for (int j = 0; j <= i % 4; j++)
+                        trackedObject.addCloudPoint(i * 0.1 + j + round, j - i * 0.2);
+                    fusionSlam.getAwaitingProcess().add(trackedObject);
+                }
+                fusionSlam.process();
+            }
+            return new ArrayList<>(fusionSlam.getLandmarks());
+        } finally {
+            fusionSlam.setParallelism(0);
+        }
+    }
+
+    /**
+     * Test for parallel fusion into a tiled map.
+     * @pre A tiled map keeping a single tile in memory, fused in parallel over several batches.
+     * @post The landmarks are the same as sequential fusion builds on the heap - no update is lost to an evicted tile.
+     */
+    @Test
+    void parallelFusionIntoTiledMap() throws IOException {
+        List<LandMark> expected = fuseBatches(0, 3);
+        fusionSlam.getLandmarks().clear();
+        fusionSlam.useTiledMap(1, 1, Files.createTempDirectory("tiles"));
+        try {
+            List<LandMark> actual = fuseBatches(4, 3);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                PointCloud expectedCoordinates = expected.get(i).getCoordinates();
+                PointCloud actualCoordinates = actual.get(i).getCoordinates();
+                assertEquals(expectedCoordinates.size(), actualCoordinates.size());
+                for (int j = 0; j < expectedCoordinates.size(); j++) {
+                    assertEquals(expectedCoordinates.getX(j), actualCoordinates.getX(j), "Landmark " + expected.get(i).getId() + " lost an update.");
+                    assertEquals(expectedCoordinates.getY(j), actualCoordinates.getY(j), "Landmark " + expected.get(i).getId() + " lost an update.");
+                }
+            }
+        } finally {
+            fusionSlam.useHeapMap();
+        }
+    }
+
+    /**
+     * Test for the mean fusions.
+     * @pre A landmark observed several times, gaining a point on its third observation.
+     * @post Running-mean fusion makes each point the mean of all its observations and counts them;
+     *       windowed fusion makes it the mean of its last observations only.
+     */
+    @Test
+    void meanFusion() {
+        try {
+            fusionSlam.setFusion(LandMarkFusion.RUNNING_MEAN, 0);
+            LandMark landMark = new LandMark("obj1", "Wall", Arrays.asList(new CloudPoint(0.0, 0.0)));
+            fusionSlam.addLandMark(landMark);
+            fusionSlam.updateLandMarkCoordinates(landMark, Arrays.asList(new CloudPoint(3.0, -3.0)));
+            fusionSlam.updateLandMarkCoordinates(landMark, Arrays.asList(new CloudPoint(6.0, -6.0), new CloudPoint(1.0, 1.0)));
+            assertEquals(3.0, landMark.getCoordinates().getX(0), 1e-9, "Every observation should weigh the same.");
+            assertEquals(-3.0, landMark.getCoordinates().getY(0), 1e-9, "Every observation should weigh the same.");
+            assertEquals(3, landMark.getObservationCount(0));
+            assertEquals(1, landMark.getObservationCount(1), "A new point should have been observed once.");
+            assertEquals(1.0, landMark.getCoordinates().getX(1), 1e-9);
+
+            fusionSlam.setFusion(LandMarkFusion.WINDOWED_MEAN, 2);
+            LandMark windowed = new LandMark("obj2", "Door", Arrays.asList(new CloudPoint(100.0, 100.0)));
+            for (int i = 1; i <= 4; i++)
+                fusionSlam.updateLandMarkCoordinates(windowed, Arrays.asList(new CloudPoint((double) i, (double) -i)));
+            assertEquals(3.5, windowed.getCoordinates().getX(0), 1e-9, "Only the last 2 observations should count.");
+            assertEquals(-3.5, windowed.getCoordinates().getY(0), 1e-9, "Only the last 2 observations should count.");
+            assertEquals(5, windowed.getObservationCount(0));
+            assertThrows(IllegalArgumentException.class, () -> fusionSlam.setFusion(LandMarkFusion.WINDOWED_MEAN, 0));
+        } finally {
+            fusionSlam.setFusion(LandMarkFusion.HALVING, 0);
+        }
+    }
+
+    /**
+     * Test for map snapshots.
+     * @pre A reader thread reads snapshots while the fusion thread keeps adding and fusing landmarks.
+     * @post Every snapshot stays exactly as it was published, versions only grow, and the last snapshot matches the map.
+     */
+    @Test
+    void snapshotsAreConsistentWhileFusing() throws InterruptedException {
+        fusionSlam.getAwaitingProcess().clear();
+        fusionSlam.publishSnapshot();
+        MapSnapshot empty = fusionSlam.getSnapshot();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            long version = -1;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    MapSnapshot snapshot = fusionSlam.getSnapshot();
+                    assertTrue(snapshot.getVersion() >= version, "Versions should only grow.");
+                    version = snapshot.getVersion();
+                    double sum = 0;
+                    for (LandMark landMark : snapshot)
+                        sum += landMark.getCoordinates().getX(0);
+                    double again = 0;
+                    for (LandMark landMark : snapshot)
+                        again += landMark.getCoordinates().getX(0);
+                    assertEquals(sum, again, "A snapshot should not change.");
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        for (int time = 1; time <= 300; time++) {
+            fusionSlam.addPoses(new Pose(time, 0, 0, 0));
+            for (int i = 0; i < 10; i++) {
+                TrackedObject trackedObject = new TrackedObject("obj" + ((time * 10 + i) % 2500), time, "");
+                trackedObject.addCloudPoint((double) time, (double) i);
+                fusionSlam.getAwaitingProcess().add(trackedObject);
+            }
+            fusionSlam.process();
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(failure.get(), "The reader should not fail.");
+        MapSnapshot last = fusionSlam.getSnapshot();
+        assertEquals(0, empty.size(), "An old snapshot should not change.");
+        assertEquals(300, last.getNewestPoseTime());
+        assertEquals(fusionSlam.getLandmarks().size(), last.size());
+        for (int i = 0; i < last.size(); i++) {
+            assertEquals(fusionSlam.getLandmarks().get(i).getId(), last.get(i).getId());
+            assertEquals(fusionSlam.getLandmarks().get(i).getCoordinates().getX(0), last.get(i).getCoordinates().getX(0));
+            assertNotSame(fusionSlam.getLandmarks().get(i), last.get(i), "A snapshot should hold copies.");
+        }
+        fusionSlam.getPoses().clear();
+    }
+
+    /**
+     * Test for the spatial queries on landmarks.
+     * @pre Landmarks spread over the map, some of them fused (moved) after they were added.
+     * @post Radius and k-nearest queries find the same landmarks, in the same order, as a scan of all of them.
+     */
+    @Test
+    void spatialQueriesMatchScan() {
+        Random random = new Random(17);
+        for (int i = 0; i < 300; i++) {
+            List<CloudPoint> points = new ArrayList<>();
+            double x = random.nextDouble() * 100 - 50;
+            double y = random.nextDouble() * 100 - 50;
+            for (int j = 0; j <= i % 3; j++)
+                points.add(new CloudPoint(x + j * 1.5, y - j));
+            fusionSlam.addLandMark(new LandMark("obj" + i, "", points));
+        }
+        for (int i = 0; i < 300; i += 7) {
+            PointCloud shift = new PointCloud();
+            shift.add(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50);
+            fusionSlam.updateLandMarkCoordinates(fusionSlam.getLandmarks().get(i), shift);
+        }
+        for (int query = 0; query < 50; query++) {
+            Pose pose = new Pose(query, (float) (random.nextDouble() * 140 - 70), (float) (random.nextDouble() * 140 - 70), 0);
+            List<LandMark> scan = new ArrayList<>(fusionSlam.getLandmarks());
+            scan.sort(Comparator.comparingDouble((LandMark landMark) -> distance(landMark, pose)).thenComparing(LandMark::getId));
+            List<LandMark> within = new ArrayList<>();
+            for (LandMark landMark : scan) {
+                if (distance(landMark, pose) <= 10)
+                    within.add(landMark);
+            }
+            assertEquals(within, fusionSlam.findLandMarksNear(pose, 10), "Radius query at " + pose.getX() + "," + pose.getY());
+            assertEquals(scan.subList(0, 5), fusionSlam.findNearestLandMarks(pose, 5), "5-nearest query at " + pose.getX() + "," + pose.getY());
+        }
+        assertEquals(300, fusionSlam.findNearestLandMarks(new Pose(0, 0, 0, 0), 1000).size(), "All landmarks should be found.");
+        fusionSlam.getLandmarks().remove(0);
+        assertEquals(299, fusionSlam.findLandMarksNear(new Pose(0, 0, 0, 0), 1000).size(), "A removed landmark should not be found.");
+    }
+
+    /**
+     * Test for the tiled map.
+     * @pre The same landmarks are added to, and moved in, a heap map and a tiled map that keeps only 2 tiles in memory.
+     * @post The tiled map holds the same landmarks, in the same order, and answers queries the same way -
+     *       including changes to landmarks whose tile was evicted in between.
+     */
+    @Test
+    void tiledMapMatchesHeapMap() throws IOException {
+        TiledLandMarkStore tiled = new TiledLandMarkStore(10, 2, Files.createTempDirectory("tiles"));
+        LandMarkIndex heap = new LandMarkIndex();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            double x = random.nextDouble() * 100 - 50;
+            double y = random.nextDouble() * 100 - 50;
+            tiled.add(new LandMark("obj" + i, "d" + i, Arrays.asList(new CloudPoint(x, y), new CloudPoint(x + 1, y))));
+            heap.add(new LandMark("obj" + i, "d" + i, Arrays.asList(new CloudPoint(x, y), new CloudPoint(x + 1, y))));
+        }
+        for (int i = 0; i < 200; i += 3) {
+            LandMark held = tiled.findById("obj" + i);
+            tiled.findWithin(random.nextDouble() * 100 - 50, 0, 30); // likely evicts the tile of the held landmark
+            PointCloud shift = new PointCloud();
+            shift.add(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50);
+            fusionSlam.updateLandMarkCoordinates(held, shift);
+            tiled.moved(held);
+            fusionSlam.updateLandMarkCoordinates(heap.findById("obj" + i), shift);
+            heap.moved(heap.findById("obj" + i));
+        }
+        assertEquals(heap.size(), tiled.size());
+        for (int i = 0; i < heap.size(); i++) {
+            assertEquals(heap.get(i).getId(), tiled.get(i).getId());
+            assertEquals(heap.get(i).getDescription(), tiled.get(i).getDescription());
+            assertEquals(heap.get(i).getCoordinates().getX(0), tiled.get(i).getCoordinates().getX(0), "Changes should survive eviction.");
+            assertEquals(heap.get(i).getCoordinates().getY(1), tiled.get(i).getCoordinates().getY(1), "Changes should survive eviction.");
+        }
+        for (int query = 0; query < 20; query++) {
+            double x = random.nextDouble() * 120 - 60;
+            double y = random.nextDouble() * 120 - 60;
+            assertEquals(ids(heap.findWithin(x, y, 15)), ids(tiled.findWithin(x, y, 15)));
+            assertEquals(ids(heap.findNearest(x, y, 4)), ids(tiled.findNearest(x, y, 4)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> tiled.add(new LandMark("obj0", "", new ArrayList<>())));
+        tiled.clear();
+        assertEquals(0, tiled.size());
+    }
+
+    private static List<String> ids(List<LandMark> landMarks) {
+        List<String> ids = new ArrayList<>();
+        for (LandMark landMark : landMarks)
+            ids.add(landMark.getId());
+        return ids;
+    }
+
+    private static double distance(LandMark landMark, Pose pose) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (CloudPoint point : landMark.getCoordinates())
+            nearest = Math.min(nearest, Math.hypot(point.getX() - pose.getX(), point.getY() - pose.getY()));
+        return nearest;
+    }
+
+    /**
+     * Test for the JSON form of landmark coordinates.
+     * @pre A landmark whose coordinates are kept in a primitive point cloud.
+     * @post It is written exactly like a landmark holding a list of cloud points.
+     */
+    @Test
+    void landMarkJsonUnchanged() {
+        List<CloudPoint> points = Arrays.asList(new CloudPoint(1.5, -2.0), new CloudPoint(3.25, 4.0));
+        LandMark landMark = new LandMark("obj1", "Wall", points);
+        assertEquals("{\"id\":\"obj1\",\"description\":\"Wall\",\"coordinates\":[{\"x\":1.5,\"y\":-2.0},{\"x\":3.25,\"y\":4.0}]}",
+                new Gson().toJson(landMark), "Landmarks should be written as before.");
+        assertEquals(3.25, landMark.getCoordinates().getX(1), 0.001);
+    }
+
     /**
      * Test for createNewLandMark.
      * @pre A valid Pose corresponding to the tracked object's time is added to FusionSlam.
@@ -126,6 +531,34 @@ class FusionSlamTest {
         assertEquals(10.0, globalCoordinates.get(1).getY(), 0.001, "Y-coordinate of second point should be transformed correctly.");
     }
 
+    /**
+     * Test for the batch transform.
+     * @pre Tracked objects at two known poses and one unknown pose.
+     * @post Each cloud is transformed by the pose at its time, exactly as createNewLandMark transforms it,
+     *       and an object without a pose gets null.
+     */
+    @Test
+    void transformBatch() {
+        fusionSlam.addPoses(new Pose(1, 5, 10, 90));
+        fusionSlam.addPoses(new Pose(2, -1.5f, 2.25f, 33.3f));
+        List<TrackedObject> batch = new ArrayList<>();
+        for (int time = 1; time <= 3; time++) {
+            TrackedObject trackedObject = new TrackedObject("obj" + time, time, "");
+            for (int i = 0; i < 20; i++)
+                trackedObject.addCloudPoint(i * 0.7, 3.1 - i);
+            batch.add(trackedObject);
+        }
+        List<PointCloud> global = PoseTransform.applyAll(batch, fusionSlam.getPoses());
+        assertEquals(2.9, global.get(0).getX(1), 0.001, "X-coordinate should be transformed correctly.");
+        assertEquals(10.7, global.get(0).getY(1), 0.001, "Y-coordinate should be transformed correctly.");
+        for (int i = 0; i < 20; i++) {
+            CloudPoint expected = fusionSlam.createNewLandMark(2, batch.get(1)).getCoordinates().get(i);
+            assertEquals(expected.getX(), global.get(1).getX(i), 0.0, "The batch should give the same coordinates.");
+            assertEquals(expected.getY(), global.get(1).getY(i), 0.0, "The batch should give the same coordinates.");
+        }
+        assertNull(global.get(2), "An object without a pose should not be transformed.");
+    }
+
     /**
      * Test for createNewLandMark with missing pose.
      * @pre No Pose corresponding to the tracked object's time is added to FusionSlam.
@@ -0,0 +1,163 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiDarWorkerTrackerTest {
+    private static String filePath;
+    private LiDarWorkerTracker tracker;
+
+    /**
+     * The database is a singleton, loaded once for all the tests.
+     */
+    @BeforeAll
+    static void writeDatabase() throws IOException {
+        File file = File.createTempFile("lidar_data", ".json");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("[{\"id\":\"b\",\"time\":2,\"cloudPoints\":[[1.0,2.0,0.1]]},"
+                    + "{\"id\":\"a\",\"time\":2,\"cloudPoints\":[[3.0,4.0,0.1],[5.0,6.0,0.1]]},"
+                    + "{\"id\":\"a\",\"time\":3,\"cloudPoints\":[[7.0,8.0,0.1]]},"
+                    + "{\"id\":\"b\",\"time\":2,\"cloudPoints\":[[9.0,10.0,0.1]]}]");
+        }
+        filePath = file.getAbsolutePath();
+    }
+
+    @BeforeEach
+    void setUp() {
+        tracker = new LiDarWorkerTracker(1, 0, filePath);
+    }
+
+    /**
+     * Test for checkData.
+     * @pre A database with several entries at the same time, one id appearing twice.
+     * @post Every entry matching a detected object at the detection time is tracked,
+     *       in the order of the database - not of the detection.
+     */
+    @Test
+    void checkDataKeepsDatabaseOrder() {
+        List<DetectedObject> objects = Arrays.asList(new DetectedObject("a", "A"), new DetectedObject("b", "B"),
+                new DetectedObject("c", "C"));
+        tracker.checkData(new StampedDetectedObjects(2, objects));
+        List<TrackedObject> tracked = tracker.getLastTrackedObjects();
+        assertEquals(3, tracked.size(), "Both entries of b and the entry of a at time 2 should be tracked.");
+        assertEquals(1.0, tracked.get(0).getCoordinates().getX(0), 1e-9);
+        assertEquals(3.0, tracked.get(1).getCoordinates().getX(0), 1e-9);
+        assertEquals(2, tracked.get(1).getCoordinates().size());
+        assertEquals(9.0, tracked.get(2).getCoordinates().getX(0), 1e-9);
+        assertEquals("B", tracked.get(2).getDescription());
+        assertEquals(2, tracked.get(2).getTime());
+    }
+
+    /**
+     * Test for reading the database in a window.
+     * @pre A database reading a window of 1 tick around the times asked for.
+     * @post Frames are found as when reading the whole file, older frames are dropped,
+     *       and the database is finished only once the whole file was read and tracked.
+     */
+    @Test
+    void windowedDatabase() {
+        LiDarDataBase dataBase = new LiDarDataBase(filePath, 1);
+        StampedCloudPoints[] frames = dataBase.find(1, 2);
+        assertEquals(3, frames.length);
+        assertEquals("a", frames[1].getId(), "Frames should be in the order of the file.");
+        assertEquals(9.0, frames[2].getPoints().getX(0), 1e-9);
+        assertEquals(1, dataBase.find(1, 3).length, "A frame within the window should be found.");
+        assertEquals(0, dataBase.find(1, 5).length);
+        assertEquals(0, dataBase.find(1, 2).length, "Frames behind the window should be dropped.");
+        assertTrue(dataBase.getStampedCloudPoints().isEmpty());
+        for (int i = 0; i < 3; i++)
+            dataBase.incTracked();
+        assertFalse(dataBase.isFinished());
+        dataBase.incTracked();
+        assertTrue(dataBase.isFinished(), "Every frame of the file was tracked.");
+    }
+
+    /**
+     * Test for workers sharing a windowed database.
+     * @pre Two trackers on a database reading a window of 1 tick, one of them running well behind the other.
+     * @post The tracker behind finds every frame the one ahead found - frames are dropped only once both passed them -
+     *       and frames stop being kept for a tracker once it is down.
+     */
+    @Test
+    void windowedDatabaseSharedByWorkers() throws IOException {
+        File file = File.createTempFile("lidar_data", ".json");
+        file.deleteOnExit();
+        StringBuilder json = new StringBuilder("[");
+        for (int time = 1; time <= 8; time++)
+            json.append(time == 1 ? "" : ",").append("{\"id\":\"a\",\"time\":").append(time)
+                    .append(",\"cloudPoints\":[[").append(time).append(".0,0.0,0.1]]}");
+        Files.write(file.toPath(), json.append("]").toString().getBytes());
+        LiDarDataBase dataBase = new LiDarDataBase(file.getAbsolutePath(), 1);
+        LiDarWorkerTracker ahead = new LiDarWorkerTracker(1, 0, dataBase);
+        LiDarWorkerTracker behind = new LiDarWorkerTracker(2, 0, dataBase);
+        for (int time = 1; time <= 6; time++)
+            ahead.checkData(new StampedDetectedObjects(time, Arrays.asList(new DetectedObject("a", "A"))));
+        for (int time = 1; time <= 4; time++)
+            behind.checkData(new StampedDetectedObjects(time, Arrays.asList(new DetectedObject("a", "A"))));
+        assertEquals(6, ahead.getLastTrackedObjects().size());
+        assertEquals(4, behind.getLastTrackedObjects().size(), "Frames the tracker behind needs should be kept.");
+        for (int time = 1; time <= 4; time++)
+            assertEquals(time, behind.getLastTrackedObjects().get(time - 1).getCoordinates().getX(0), 1e-9);
+        assertEquals(3.0, dataBase.getStampedCloudPoints().get(0).getPoints().getX(0), 1e-9,
+                "Frames both trackers passed should be dropped.");
+
+        behind.setStatus(STATUS.DOWN);
+        ahead.checkData(new StampedDetectedObjects(7, Arrays.asList(new DetectedObject("a", "A"))));
+        assertEquals(6.0, dataBase.getStampedCloudPoints().get(0).getPoints().getX(0), 1e-9,
+                "Frames should not be kept for a tracker that is down.");
+    }
+
+    /**
+     * Test for reading the database from its binary recording.
+     * @pre The database converted to a binary recording, and the JSON file deleted.
+     * @post The same frames, with the same coordinates, are read from the binary file - only once they are asked for,
+     *       and the database knows when all of them were tracked even before it read them.
+     */
+    @Test
+    void binaryDatabase() throws IOException {
+        File json = File.createTempFile("lidar_data", ".json");
+        Path binary = BinaryRecording.binaryPathOf(json.getAbsolutePath());
+        binary.toFile().deleteOnExit();
+        Files.write(json.toPath(), ("[{\"id\":\"a\",\"time\":1,\"cloudPoints\":[[0.5,-2.25,0.1],[4.75,5.0,0.1]]},"
+                + "{\"id\":\"b\",\"time\":2,\"cloudPoints\":[[0.1,6.0,0.1]]}]").getBytes());
+        List<StampedCloudPoints> frames = new LiDarDataBase(json.getAbsolutePath(), 0).getStampedCloudPoints();
+        BinaryRecording.writeLidar(frames.subList(0, 1), binary);
+        assertTrue(json.delete());
+        LiDarDataBase dataBase = new LiDarDataBase(json.getAbsolutePath(), 0);
+        assertTrue(dataBase.getStampedCloudPoints().isEmpty(), "Frames should be read only once asked for.");
+        assertEquals(-2.25, dataBase.find(1, 1)[0].getPoints().getY(0), 0,
+                "Coordinates that are floats should read back exactly.");
+        assertEquals(4.75, dataBase.getStampedCloudPoints().get(0).getPoints().getX(1), 0);
+        assertFalse(dataBase.isFinished());
+        dataBase.incTracked();
+        assertTrue(dataBase.isFinished());
+
+        BinaryRecording.writeLidar(frames, binary);
+        dataBase = new LiDarDataBase(json.getAbsolutePath(), 1);
+        assertEquals(0.1, dataBase.find(1, 2)[0].getPoints().getX(0), 0,
+                "Coordinates that are not floats should be kept as doubles.");
+        assertEquals("b", dataBase.getStampedCloudPoints().get(1).getId());
+    }
+
+    /**
+     * @pre A detection at a time the database has no entries for.
+     * @post Nothing is tracked.
+     */
+    @Test
+    void checkDataAtUnknownTime() {
+        tracker.checkData(new StampedDetectedObjects(9, Arrays.asList(new DetectedObject("a", "A"))));
+        assertTrue(tracker.getLastTrackedObjects().isEmpty());
+    }
+}